@@ -3,7 +3,6 @@ package algorithms.analysis;
 import algorithms.search.MoveCompiler;
 import data.BoardPiece;
 import data.structures.GameState;
-import data.Position;
 import org.junit.jupiter.api.Test;
 import tools.Debug;
 import tools.Maths;
@@ -61,8 +60,24 @@ public class Amazongs {
         }
     }
 
+    public enum distance_mode {
+        FULL, // every distance map is computed from scratch
+        INCREMENTAL // distance maps are repaired from the parent position's (see DistanceFields)
+    }
+
     public static double CalculateHeuristic(GameState board) {
-        UberDistanceData data = calculate_all_distances(board);
+        return CalculateHeuristic(board, Tuner.use_incremental_amazongs ? distance_mode.INCREMENTAL : distance_mode.FULL);
+    }
+
+    public static double CalculateHeuristic(GameState board, distance_mode mode) {
+        return CalculateHeuristic(board, mode, Tuner.use_packed_scoring ? PackedScoring.mode.PACKED : PackedScoring.mode.SCALAR);
+    }
+
+    public static double CalculateHeuristic(GameState board, distance_mode mode, PackedScoring.mode scoring) {
+        if (scoring == PackedScoring.mode.PACKED) {
+            return mode == distance_mode.INCREMENTAL ? PackedScoring.Amazongs(board, DistanceFields.Get(board)) : PackedScoring.Amazongs(board);
+        }
+        UberDistanceData data = mode == distance_mode.INCREMENTAL ? incremental_distances(board) : calculate_all_distances(board);
         final int num_pieces = data.p1.length;
         int[] valid_tiles = MoveCompiler.GetEmptyTiles(board);
         double c1 = 0;
@@ -76,7 +91,7 @@ public class Amazongs {
             double p1_d2 = data.p1_best.king_distances[tile];
             double p2_d2 = data.p2_best.king_distances[tile];
             t1 += Maths.delta(p1_d1, p2_d1);
-            c1 += Math.pow(2, -p1_d1) - Math.pow(2, -p2_d1);
+            c1 += Maths.pow2(-p1_d1) - Maths.pow2(-p2_d1);
             double dd2 = Double.isInfinite(p2_d2) || Double.isInfinite(p1_d2)
                     ? (Double.isInfinite(p2_d2) && Double.isInfinite(p1_d2)
                     ? 0 : (p2_d2 > p1_d2
@@ -85,7 +100,7 @@ public class Amazongs {
             c2 += Math.min(1, Math.max(-1, dd2));
             double dd1 = p1_d1 - p2_d1;
             if (Double.isFinite(dd1)) {
-                w += Math.pow(2, -Math.abs(dd1));
+                w += Maths.pow2(-Math.abs(dd1));
             }
             t2 += Maths.delta(p1_d2, p2_d2);
         }
@@ -103,10 +118,10 @@ public class Amazongs {
             for (int tile : valid_tiles) {
                 int N_b = count_neighbours(board, tile);
                 if (data.p1[piece].queen_distances[tile] == 1 && data.p2_best.queen_distances[tile] < Double.POSITIVE_INFINITY) {
-                    p1_a[piece] += (Math.pow(2, -data.p1[piece].king_distances[tile])) * N_b;
+                    p1_a[piece] += Maths.pow2(-data.p1[piece].king_distances[tile]) * N_b;
                 }
                 if (data.p2[piece].queen_distances[tile] == 1 && data.p1_best.queen_distances[tile] < Double.POSITIVE_INFINITY) {
-                    p2_a[piece] += (Math.pow(2, -data.p2[piece].king_distances[tile])) * N_b;
+                    p2_a[piece] += Maths.pow2(-data.p2[piece].king_distances[tile]) * N_b;
                 }
             }
         }
@@ -149,94 +164,52 @@ public class Amazongs {
     }
 
 
+    static UberDistanceData incremental_distances(GameState board) {
+        DistanceFields fields = DistanceFields.Get(board);
+        // DistanceFields keeps player 1's queens first
+        int p1 = Tuner.use_static_pieces ? 1 : board.GetNextPlayerTurn();
+        int p2 = Tuner.use_static_pieces ? 2 : board.GetPlayerTurn();
+        return new UberDistanceData(copy_distances(fields, (p1 - 1) * 4), copy_distances(fields, (p2 - 1) * 4));
+    }
+
+    private static DistanceData[] copy_distances(DistanceFields fields, int first_queen) {
+        DistanceData[] territory = new DistanceData[4];
+        for (int i = 0; i < territory.length; ++i) {
+            territory[i] = new DistanceData();
+            for (int tile = 0; tile < Tuner.state_size; ++tile) {
+                territory[i].queen_distances[tile] = fields.QueenDistance(first_queen + i, tile);
+                territory[i].king_distances[tile] = fields.KingDistance(first_queen + i, tile);
+            }
+        }
+        return territory;
+    }
+
     private static DistanceData[] calculate_distances(GameState board, BoardPiece[] pieces) {
         DistanceData[] territory = new DistanceData[pieces.length];
         int[] position = new int[1];
+        int[] distances = new int[Tuner.state_size];
         for (int i = 0; i < territory.length; ++i) {
             territory[i] = new DistanceData();
             position[0] = pieces[i].CalculateIndex();
-            find_best_king_distances(board, position, territory[i].king_distances, 1);
-            find_best_queen_distances(board, position, territory[i].queen_distances, 1);
+            MultiSourceBFS.Run(board, position, 0, 1, MultiSourceBFS.metric.KING, distances);
+            copy_distances(distances, territory[i].king_distances);
+            MultiSourceBFS.Run(board, position, 0, 1, MultiSourceBFS.metric.QUEEN, distances);
+            copy_distances(distances, territory[i].queen_distances);
         }
         return territory;
     }
 
-    private static void find_best_king_distances(GameState board, int[] starting_positions, double[] distance_map, int distance) {
-        int[] next_positions = new int[Tuner.state_size];
-        Arrays.fill(next_positions, -1);
-        for (int index : starting_positions) {
-            if (index < 0) {
-                continue;
-            }
-            Position[] neighbours = MoveCompiler.GetNeighbours(index);
-            if (neighbours != null) {
-                for (Position n : neighbours) {
-                    int n_index = n.CalculateIndex();
-                    if (n.IsValid() && board.ReadTile(n_index) == 0 && distance < distance_map[n_index]) {
-                        next_positions[n.CalculateIndex()] = n.CalculateIndex();
-                        distance_map[n_index] = distance;
-                    }
-                }
-            }
+    // the piece's own tile and tiles it can't reach are infinitely far away
+    private static void copy_distances(int[] distances, double[] distance_map) {
+        for (int tile = 0; tile < distances.length; ++tile) {
+            distance_map[tile] = distances[tile] > 0 ? distances[tile] : Double.POSITIVE_INFINITY;
         }
-        if (distance < 20) {
-            find_best_king_distances(board, next_positions, distance_map, distance + 1);
-        }
-    }
-
-    private static void find_best_queen_distances(GameState board, int[] starting_positions, double[] distance_map, int distance) {
-        int[][] new_positions = MoveCompiler.GetOpenPositions(board, starting_positions, false); //[starting index][index of open positions]
-        for (int i = 0; i < new_positions.length; ++i) {
-            if (new_positions[i] != null) {
-                new_positions[i] = prune_positions(new_positions[i], distance_map, distance);
-                for (int index : new_positions[i]) {
-                    if (index == -1) {
-                        break;
-                    }
-                    if (distance < distance_map[index]) {
-                        distance_map[index] = distance;
-                    }
-                }
-            }
-        }
-
-        for (int[] position_list : new_positions) {
-            if (position_list != null) {
-                find_best_queen_distances(board, position_list, distance_map, distance + 1);
-            }
-        }
-    }
-
-    private static int[] prune_positions(int[] positions, double[] distance_map, int distance) {
-        Debug.RunVerboseL3DebugCode(()->{
-            System.out.println("positions we just looked at:");
-            System.out.println(Arrays.toString(positions));
-        });
-        int[] pruned_positions = new int[positions.length];
-        int i = 0;
-        for (int index : positions) {
-            if (index < 0) {
-                break;
-            }
-            if (distance < distance_map[index]) {
-                pruned_positions[i++] = index;
-            }
-        }
-        if (i < pruned_positions.length) {
-            pruned_positions[i] = -1;
-        }
-        Debug.RunVerboseL3DebugCode(()->{
-            System.out.println("pruned positions:");
-            System.out.println(Arrays.toString(pruned_positions));
-        });
-        return pruned_positions;
     }
 
     private static int count_neighbours(GameState board, int tile) {
-        Position[] neighbours = MoveCompiler.GetNeighbours(tile);
         int count = 0;
-        for (Position n : neighbours) {
-            if (n.IsValid() && board.ReadTile(n.CalculateIndex()) == 0) {
+        for (int n : MultiSourceBFS.GetKingNeighbours(tile)) {
+            if (board.IsEmpty(n)) {
                 count++;
             }
         }
@@ -264,7 +237,7 @@ public class Amazongs {
                 double p2_d1 = data.p2_best.queen_distances[tile];
                 double dd1 = p1_d1 - p2_d1;
                 if (Double.isFinite(dd1)) {
-                    w += Math.pow(2, -Math.abs(dd1));
+                    w += Maths.pow2(-Math.abs(dd1));
                 }
             }
 
@@ -309,10 +282,10 @@ public class Amazongs {
                 for (int tile : valid_tiles) {
                     int N_b = count_neighbours(board, tile);
                     if (data.p1[piece].queen_distances[tile] == 1 && data.p2_best.queen_distances[tile] < Double.POSITIVE_INFINITY) {
-                        p1_a[piece] += Math.pow(2, -data.p1[piece].king_distances[tile]) * N_b;
+                        p1_a[piece] += Maths.pow2(-data.p1[piece].king_distances[tile]) * N_b;
                     }
                     if (data.p2[piece].queen_distances[tile] == 1 && data.p1_best.queen_distances[tile] < Double.POSITIVE_INFINITY) {
-                        p2_a[piece] += Math.pow(2, -data.p2[piece].king_distances[tile]) * N_b;
+                        p2_a[piece] += Maths.pow2(-data.p2[piece].king_distances[tile]) * N_b;
                     }
                     double l = Math.min(p1_a[piece], p2_a[piece]);
                     double h = Math.max(p1_a[piece], p2_a[piece]);
@@ -338,9 +311,8 @@ public class Amazongs {
     void queen_distances(){
         GameState board = new GameState(Debug.test_state_black_disadvantage);
         board.FindPieces();
-        double[] distances = new double[Tuner.state_size];
-        Arrays.fill(distances, Double.POSITIVE_INFINITY);
-        find_best_queen_distances(board,MoveCompiler.ConvertPositions(board.GetPlayerPieces(1)),distances,1);
+        int[] distances = new int[Tuner.state_size];
+        MultiSourceBFS.Run(board, MoveCompiler.ConvertPositions(board.GetPlayerPieces(1)), 0, 4, MultiSourceBFS.metric.QUEEN, distances);
         System.out.println(Arrays.toString(distances));
         board.DebugPrint();
     }
@@ -0,0 +1,133 @@
+package algorithms.analysis;
+
+import data.Heuristic;
+import data.structures.GameState;
+import data.structures.GameTreeNode;
+import tools.Tuner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BatchEvaluator evaluates many positions in one pass, usually the siblings an expansion has just created.
+ * The batch is laid out as a structure of arrays (one array per heuristic, indexed by position) in scratch owned by the
+ * calling thread, and each heuristic runs across the whole batch before the next one starts. Siblings differ by one
+ * move, so their distance fields are repaired from the parent's, and Territory is scored from the same fields Amazongs
+ * uses instead of running its own searches. The results are written back at the end, leaving every node exactly as
+ * HeuristicsQueue.CalculateHeuristicsAll would have.
+ */
+public class BatchEvaluator {
+    private static class Batch {
+        GameTreeNode[] nodes = new GameTreeNode[0];
+        GameState[] boards = new GameState[0];
+        int[] claimed = new int[0]; // the has_* flags this batch claimed on each node, the other evaluators skip those
+        double[] winner = new double[0];
+        double[] mobility = new double[0];
+        double[] territory = new double[0];
+        double[] amazongs = new double[0];
+        int size = 0;
+
+        void Reserve(int n) {
+            if (nodes.length < n) {
+                int capacity = Math.max(n, nodes.length * 2);
+                nodes = Arrays.copyOf(nodes, capacity);
+                boards = Arrays.copyOf(boards, capacity);
+                claimed = Arrays.copyOf(claimed, capacity);
+                winner = Arrays.copyOf(winner, capacity);
+                mobility = Arrays.copyOf(mobility, capacity);
+                territory = Arrays.copyOf(territory, capacity);
+                amazongs = Arrays.copyOf(amazongs, capacity);
+            }
+        }
+
+        void Clear() {
+            Arrays.fill(nodes, 0, size, null);
+            Arrays.fill(boards, 0, size, null);
+            size = 0;
+        }
+    }
+    private static final ThreadLocal<Batch> scratch = ThreadLocal.withInitial(Batch::new);
+
+    public static void Evaluate(List<GameTreeNode> nodes, boolean skip_propagation) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        Batch b = scratch.get();
+        Load(b, nodes);
+        if (Tuner.use_winner_heuristic) {
+            for (int i = 0; i < b.size; ++i) {
+                if ((b.claimed[i] & Heuristic.has_winner) != 0) {
+                    b.winner[i] = Winner.CalculateHeuristic(b.boards[i]);
+                }
+            }
+        }
+        if (Tuner.use_mobility_heuristic) {
+            for (int i = 0; i < b.size; ++i) {
+                b.mobility[i] = Mobility.CalculateHeuristic(b.boards[i]);
+            }
+        }
+        if (Tuner.use_territory_heuristic || Tuner.use_amazongs_heuristic) {
+            // the fields are only worth building when Amazongs wants them anyway
+            boolean share_fields = Tuner.use_amazongs_heuristic && Tuner.use_incremental_amazongs;
+            for (int i = 0; i < b.size; ++i) {
+                GameState board = b.boards[i];
+                DistanceFields fields = share_fields ? DistanceFields.Get(board) : null;
+                if ((b.claimed[i] & Heuristic.has_territory) != 0) {
+                    b.territory[i] = fields != null ? Territory.CalculateHeuristic(board, fields) : Territory.CalculateHeuristic(board);
+                }
+                if ((b.claimed[i] & Heuristic.has_amazongs) != 0) {
+                    b.amazongs[i] = Amazongs.CalculateHeuristic(board); // finds the same fields in this thread's cache
+                }
+            }
+        }
+        Store(b, skip_propagation);
+    }
+
+    private static void Load(Batch b, List<GameTreeNode> nodes) {
+        b.Reserve(nodes.size());
+        for (GameTreeNode node : nodes) {
+            GameState board = node.state_after_move.get();
+            if (board == null) {
+                continue;
+            }
+            Heuristic h = node.heuristic;
+            int claimed = 0;
+            if (Tuner.use_winner_heuristic && h.claim(Heuristic.has_winner)) {
+                claimed |= Heuristic.has_winner;
+            }
+            if (Tuner.use_territory_heuristic && h.claim(Heuristic.has_territory)) {
+                claimed |= Heuristic.has_territory;
+            }
+            if (Tuner.use_amazongs_heuristic && h.claim(Heuristic.has_amazongs)) {
+                claimed |= Heuristic.has_amazongs;
+            }
+            int i = b.size++;
+            b.nodes[i] = node;
+            b.boards[i] = board;
+            b.claimed[i] = claimed;
+        }
+    }
+
+    private static void Store(Batch b, boolean skip_propagation) {
+        for (int i = 0; i < b.size; ++i) {
+            Heuristic h = b.nodes[i].heuristic;
+            int claimed = b.claimed[i];
+            if ((claimed & Heuristic.has_winner) != 0) {
+                h.winner = b.winner[i];
+            }
+            if (Tuner.use_mobility_heuristic) {
+                h.mobility = b.mobility[i];
+            }
+            if ((claimed & Heuristic.has_territory) != 0) {
+                h.territory = b.territory[i];
+            }
+            if ((claimed & Heuristic.has_amazongs) != 0) {
+                h.amazongs = b.amazongs[i];
+            }
+        }
+        for (int i = 0; i < b.size; ++i) {
+            HeuristicsQueue.Combine(b.boards[i], b.nodes[i], skip_propagation);
+        }
+        b.Clear();
+    }
+}
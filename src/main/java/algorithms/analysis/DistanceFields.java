@@ -0,0 +1,422 @@
+package algorithms.analysis;
+
+import algorithms.search.RayTable;
+import data.Move;
+import data.structures.GameState;
+import data.structures.Zobrist;
+import tools.Tuner;
+
+
+/**
+ * DistanceFields holds the queen and king move distance maps Amazongs uses, for every queen on one board.
+ * A child position's fields are repaired from its parent's: a move only opens one tile and blocks two, so only the tiles
+ * that lost their shortest path through the blocked tiles (found level by level) and the tiles that gain a shorter path
+ * through the opened tile are touched. The moved queen's own maps are rebuilt.
+ * Each thread keeps its last few fields, so evaluating siblings repairs from the same parent.
+ */
+class DistanceFields {
+    static final byte unreachable = Byte.MAX_VALUE;
+    private static final int queen_metric = 0;
+    private static final int king_metric = 1;
+    private static final int cache_size = 4;
+
+    private static class Scratch {
+        final DistanceFields[] cache = new DistanceFields[cache_size];
+        int next_slot = 0;
+        final int[] queue = new int[Tuner.state_size]; // a ring, each tile is queued at most once at a time
+        final boolean[] queued = new boolean[Tuner.state_size];
+        int head;
+        int tail;
+        int size;
+        final boolean[] dirty = new boolean[Tuner.state_size];
+        final int[] dirty_tiles = new int[Tuner.state_size];
+        final long[] level_lo = new long[Tuner.state_size + 1];
+        final long[] level_hi = new long[Tuner.state_size + 1];
+        final int[] tiles = new int[RayTable.max_reach];
+        final int[] distances = new int[Tuner.state_size];
+    }
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    long key;
+    private long occupied_lo;
+    private long occupied_hi;
+    final int[] queens = new int[8]; // [0,3] belong to player 1, [4,7] to player 2
+    // [metric][queen * state_size + tile], the queen's own tile is 0
+    private final byte[][] distances = new byte[2][8 * Tuner.state_size];
+
+    /* Returns the fields for `board`, owned by the calling thread and valid until its next call.
+     * They are repaired from the parent position's fields whenever the thread still has them.
+     * */
+    static DistanceFields Get(GameState board) {
+        Scratch s = scratch.get();
+        long key = board.GetZobristKey();
+        DistanceFields fields = Find(s, key);
+        if (fields != null) {
+            return fields;
+        }
+        Move move = board.GetLastMove();
+        if (move == null || move.start < 0) {
+            fields = Claim(s, null);
+            fields.Load(board.GetOccupied(0), board.GetOccupied(1), board, key);
+            fields.Rebuild(s);
+            return fields;
+        }
+        int player = board.GetNextPlayerTurn(); // made the last move
+        long parent_key = key ^ Zobrist.TileKey(move.start, player) ^ Zobrist.TileKey(move.next, player)
+                ^ Zobrist.TileKey(move.arrow, 3) ^ Zobrist.side_key;
+        DistanceFields parent = Find(s, parent_key);
+        if (parent == null) {
+            // the siblings of `board` will want this parent too
+            parent = Claim(s, null);
+            long lo = board.GetOccupied(0);
+            long hi = board.GetOccupied(1);
+            lo = Clear(lo, 0, move.arrow);
+            hi = Clear(hi, 1, move.arrow);
+            lo = Set(Clear(lo, 0, move.next), 0, move.start);
+            hi = Set(Clear(hi, 1, move.next), 1, move.start);
+            parent.Load(lo, hi, board, parent_key);
+            for (int i = 0; i < parent.queens.length; ++i) {
+                if (parent.queens[i] == move.next) {
+                    parent.queens[i] = move.start;
+                }
+            }
+            parent.Rebuild(s);
+        }
+        fields = Claim(s, parent);
+        fields.CopyFrom(parent);
+        fields.Apply(s, move.start, move.next, move.arrow);
+        fields.key = key;
+        return fields;
+    }
+
+    private static DistanceFields Find(Scratch s, long key) {
+        for (DistanceFields fields : s.cache) {
+            if (fields != null && fields.key == key) {
+                return fields;
+            }
+        }
+        return null;
+    }
+
+    // hands out the least recently claimed slot, skipping `keep`
+    private static DistanceFields Claim(Scratch s, DistanceFields keep) {
+        if (s.cache[s.next_slot] != null && s.cache[s.next_slot] == keep) {
+            s.next_slot = (s.next_slot + 1) % cache_size;
+        }
+        if (s.cache[s.next_slot] == null) {
+            s.cache[s.next_slot] = new DistanceFields();
+        }
+        DistanceFields fields = s.cache[s.next_slot];
+        s.next_slot = (s.next_slot + 1) % cache_size;
+        fields.key = 0;
+        return fields;
+    }
+
+    // the king distance of `tile` from `queen`, with Amazongs' conventions (unreachable tiles and the queen's tile are infinite)
+    double KingDistance(int queen, int tile) {
+        int d = distances[king_metric][queen * Tuner.state_size + tile];
+        return d == 0 || d == unreachable ? Double.POSITIVE_INFINITY : d;
+    }
+
+    double QueenDistance(int queen, int tile) {
+        int d = distances[queen_metric][queen * Tuner.state_size + tile];
+        return d == 0 || d == unreachable ? Double.POSITIVE_INFINITY : d;
+    }
+
+    // every queen's queen move distances, laid out [queen * state_size + tile]
+    byte[] QueenLanes() {
+        return distances[queen_metric];
+    }
+
+    byte[] KingLanes() {
+        return distances[king_metric];
+    }
+
+    private void Load(long lo, long hi, GameState board, long key) {
+        occupied_lo = lo;
+        occupied_hi = hi;
+        board.GetQueenTiles(queens);
+        this.key = key;
+    }
+
+    private void Rebuild(Scratch s) {
+        for (int q = 0; q < queens.length; ++q) {
+            BreadthFirst(s, queen_metric, q);
+            BreadthFirst(s, king_metric, q);
+        }
+    }
+
+    private void CopyFrom(DistanceFields other) {
+        occupied_lo = other.occupied_lo;
+        occupied_hi = other.occupied_hi;
+        System.arraycopy(other.queens, 0, queens, 0, queens.length);
+        System.arraycopy(other.distances[queen_metric], 0, distances[queen_metric], 0, distances[queen_metric].length);
+        System.arraycopy(other.distances[king_metric], 0, distances[king_metric], 0, distances[king_metric].length);
+    }
+
+    private void Apply(Scratch s, int start, int next, int arrow) {
+        occupied_lo = Set(Set(Clear(occupied_lo, 0, start), 0, next), 0, arrow);
+        occupied_hi = Set(Set(Clear(occupied_hi, 1, start), 1, next), 1, arrow);
+        int opened = arrow == start ? -1 : start;
+        for (int q = 0; q < queens.length; ++q) {
+            if (queens[q] == start) {
+                queens[q] = next;
+                BreadthFirst(s, queen_metric, q);
+                BreadthFirst(s, king_metric, q);
+            } else if (queens[q] >= 0) {
+                Repair(s, queen_metric, q, opened, next, arrow);
+                Repair(s, king_metric, q, opened, next, arrow);
+            }
+        }
+    }
+
+    private void BreadthFirst(Scratch s, int metric, int q) {
+        MultiSourceBFS.Run(occupied_lo, occupied_hi, queens, q, 1,
+                metric == queen_metric ? MultiSourceBFS.metric.QUEEN : MultiSourceBFS.metric.KING, s.distances);
+        byte[] d = distances[metric];
+        int base = q * Tuner.state_size;
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            d[base + tile] = s.distances[tile] == MultiSourceBFS.unreached ? unreachable : (byte) s.distances[tile];
+        }
+    }
+
+    /* Fixes queen q's map after `next` and `arrow` became occupied and `opened` (if >= 0) became empty.
+     * Tiles that could have been reached through a blocked tile are checked in order of their old distance for a clean
+     * neighbour one step closer, the ones without one are dirty. Dirty tiles are reset from their clean neighbours, the
+     * tiles around the opened tile are queued, and every improvement is relaxed outwards until nothing changes.
+     * */
+    private void Repair(Scratch s, int metric, int q, int opened, int next, int arrow) {
+        byte[] d = distances[metric];
+        int base = q * Tuner.state_size;
+        int queen = queens[q];
+        boolean next_reachable = d[base + next] != unreachable;
+        boolean arrow_reachable = d[base + arrow] != unreachable;
+        d[base + next] = unreachable;
+        d[base + arrow] = unreachable;
+        // the old board had both tiles open (opening more than that only adds tiles to check)
+        long old_lo = Clear(Clear(occupied_lo, 0, next), 0, arrow);
+        long old_hi = Clear(Clear(occupied_hi, 1, next), 1, arrow);
+        int max_level = 0;
+        if (next_reachable) {
+            max_level = MarkThrough(s, metric, d, base, old_lo, old_hi, next);
+        }
+        if (arrow_reachable) {
+            max_level = Math.max(max_level, MarkThrough(s, metric, d, base, old_lo, old_hi, arrow));
+        }
+        int dirty_count = 0;
+        for (int level = 1; level <= max_level; ++level) {
+            long lo = s.level_lo[level];
+            long hi = s.level_hi[level];
+            s.level_lo[level] = 0;
+            s.level_hi[level] = 0;
+            while ((lo | hi) != 0) {
+                int v;
+                if (lo != 0) {
+                    v = Long.numberOfTrailingZeros(lo);
+                    lo &= lo - 1;
+                } else {
+                    v = Long.numberOfTrailingZeros(hi) + 64;
+                    hi &= hi - 1;
+                }
+                if (IsSupported(s, metric, d, base, queen, v)) {
+                    continue;
+                }
+                s.dirty[v] = true;
+                s.dirty_tiles[dirty_count++] = v;
+                int count = Successors(s, metric, v);
+                for (int i = 0; i < count; ++i) {
+                    int w = s.tiles[i];
+                    if (d[base + w] == level + 1) {
+                        max_level = Math.max(max_level, Mark(s, d, base, w));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < dirty_count; ++i) {
+            d[base + s.dirty_tiles[i]] = unreachable;
+        }
+        s.head = s.tail = s.size = 0;
+        for (int i = 0; i < dirty_count; ++i) {
+            int v = s.dirty_tiles[i];
+            s.dirty[v] = false;
+            Lower(s, d, base, v, BestNeighbour(metric, d, base, queen, v) + 1);
+        }
+        if (opened >= 0) {
+            Lower(s, d, base, opened, BestNeighbour(metric, d, base, queen, opened) + 1);
+            if (metric == queen_metric) {
+                // tiles on opposite sides of the opened tile can now see each other, and so can the queen
+                int count = RayTable.Scan(occupied_lo, occupied_hi, opened, s.tiles, 0);
+                for (int i = 0; i < count; ++i) {
+                    Push(s, s.tiles[i]);
+                }
+                for (int dir = 0; dir < RayTable.directions; ++dir) {
+                    if (RayEndsAt(opened, dir, queen)) {
+                        int opposite = dir ^ 1; // directions come in opposite pairs
+                        for (int t : RayTable.GetRay(opened, opposite)) {
+                            if (RayTable.IsOccupied(occupied_lo, occupied_hi, t)) {
+                                break;
+                            }
+                            Lower(s, d, base, t, 1);
+                        }
+                    }
+                }
+            }
+        }
+        while (s.size > 0) {
+            int u = Pop(s);
+            int count = Successors(s, metric, u);
+            for (int i = 0; i < count; ++i) {
+                Lower(s, d, base, s.tiles[i], d[base + u] + 1);
+            }
+        }
+    }
+
+    // queues the tiles that could have been reached through `tile` on the old board for the support check
+    private int MarkThrough(Scratch s, int metric, byte[] d, int base, long old_lo, long old_hi, int tile) {
+        int max_level = 0;
+        if (metric == queen_metric) {
+            int count = RayTable.Scan(old_lo, old_hi, tile, s.tiles, 0);
+            for (int i = 0; i < count; ++i) {
+                max_level = Math.max(max_level, Mark(s, d, base, s.tiles[i]));
+            }
+        } else {
+            for (int t : MultiSourceBFS.GetKingNeighbours(tile)) {
+                max_level = Math.max(max_level, Mark(s, d, base, t));
+            }
+        }
+        return max_level;
+    }
+
+    // queues `tile` for the support check at its old distance, returns that distance
+    private static int Mark(Scratch s, byte[] d, int base, int tile) {
+        int level = d[base + tile];
+        if (level == 0 || level == unreachable) {
+            return 0;
+        }
+        if (tile < 64) {
+            s.level_lo[level] |= 1L << tile;
+        } else {
+            s.level_hi[level] |= 1L << (tile - 64);
+        }
+        return level;
+    }
+
+    // true if `v` can still be reached from a clean tile one step closer to the queen
+    private boolean IsSupported(Scratch s, int metric, byte[] d, int base, int queen, int v) {
+        int target = d[base + v] - 1;
+        if (metric == queen_metric) {
+            for (int dir = 0; dir < RayTable.directions; ++dir) {
+                for (int u : RayTable.GetRay(v, dir)) {
+                    if (u == queen) {
+                        if (target == 0) {
+                            return true;
+                        }
+                        break;
+                    }
+                    if (RayTable.IsOccupied(occupied_lo, occupied_hi, u)) {
+                        break;
+                    }
+                    if (d[base + u] == target && !s.dirty[u]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        for (int u : MultiSourceBFS.GetKingNeighbours(v)) {
+            if (u == queen) {
+                if (target == 0) {
+                    return true;
+                }
+            } else if (!RayTable.IsOccupied(occupied_lo, occupied_hi, u) && d[base + u] == target && !s.dirty[u]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the smallest distance among the tiles `v` can be reached from (0 if the queen can reach it)
+    private int BestNeighbour(int metric, byte[] d, int base, int queen, int v) {
+        int best = unreachable;
+        if (metric == queen_metric) {
+            for (int dir = 0; dir < RayTable.directions; ++dir) {
+                for (int u : RayTable.GetRay(v, dir)) {
+                    if (u == queen) {
+                        return 0;
+                    }
+                    if (RayTable.IsOccupied(occupied_lo, occupied_hi, u)) {
+                        break;
+                    }
+                    best = Math.min(best, d[base + u]);
+                }
+            }
+            return best;
+        }
+        for (int u : MultiSourceBFS.GetKingNeighbours(v)) {
+            if (u == queen) {
+                return 0;
+            }
+            if (!RayTable.IsOccupied(occupied_lo, occupied_hi, u)) {
+                best = Math.min(best, d[base + u]);
+            }
+        }
+        return best;
+    }
+
+    // true if the first occupied tile along the ray is `tile`
+    private boolean RayEndsAt(int start, int dir, int tile) {
+        for (int t : RayTable.GetRay(start, dir)) {
+            if (RayTable.IsOccupied(occupied_lo, occupied_hi, t)) {
+                return t == tile;
+            }
+        }
+        return false;
+    }
+
+    // sets `tile` to `distance` and queues it, if that is shorter than what it has
+    private static void Lower(Scratch s, byte[] d, int base, int tile, int distance) {
+        if (distance < d[base + tile]) {
+            d[base + tile] = (byte) distance;
+            Push(s, tile);
+        }
+    }
+
+    private static void Push(Scratch s, int tile) {
+        if (!s.queued[tile]) {
+            s.queued[tile] = true;
+            s.queue[s.tail] = tile;
+            s.tail = (s.tail + 1) % Tuner.state_size;
+            ++s.size;
+        }
+    }
+
+    private static int Pop(Scratch s) {
+        int tile = s.queue[s.head];
+        s.head = (s.head + 1) % Tuner.state_size;
+        --s.size;
+        s.queued[tile] = false;
+        return tile;
+    }
+
+    // fills s.tiles with the tiles reachable from `u` in one step, returns how many there are
+    private int Successors(Scratch s, int metric, int u) {
+        if (metric == queen_metric) {
+            return RayTable.Scan(occupied_lo, occupied_hi, u, s.tiles, 0);
+        }
+        int count = 0;
+        for (int t : MultiSourceBFS.GetKingNeighbours(u)) {
+            if (!RayTable.IsOccupied(occupied_lo, occupied_hi, t)) {
+                s.tiles[count++] = t;
+            }
+        }
+        return count;
+    }
+
+    private static long Set(long word, int w, int tile) {
+        return (tile >>> 6) == w ? word | (1L << (tile & 63)) : word;
+    }
+
+    private static long Clear(long word, int w, int tile) {
+        return (tile >>> 6) == w ? word & ~(1L << (tile & 63)) : word;
+    }
+}
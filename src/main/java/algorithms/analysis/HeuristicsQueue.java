@@ -3,65 +3,183 @@ package algorithms.analysis;
 import data.Heuristic;
 import data.structures.GameState;
 import data.structures.GameTreeNode;
-import tools.Debug;
 import tools.Maths;
 import tools.Tuner;
 import ubc.cosc322.AICore;
 
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * HeuristicsQueue evaluates nodes in the background on a ForkJoinPool of Tuner.evaluation_threads workers.
+ * Jobs wait in a priority queue, nearest to the current root first, and each job submitted hands the pool one task that
+ * evaluates whichever job is nearest when the task runs. Tasks forked by a worker go on its own deque and idle workers
+ * steal from the others or park until there is work, so nothing sleeps on a timer.
+ * Jobs for positions the game has moved past are dropped when they come up, or all at once by CancelStale.
+ */
 public class HeuristicsQueue {
-	private static final ConcurrentLinkedDeque<GameTreeNode> queue = new ConcurrentLinkedDeque<>();
+	private static final PriorityBlockingQueue<Job> jobs = new PriorityBlockingQueue<>();
+	private static final AtomicLong sequence = new AtomicLong();
+	private static volatile ForkJoinPool pool = null;
+	// metrics
+	private static final LongAdder submitted = new LongAdder();
+	private static final LongAdder completed = new LongAdder();
+	private static final LongAdder cancelled = new LongAdder();
+	private static final AtomicInteger running = new AtomicInteger();
+	private static volatile long started_at = System.nanoTime();
+
+	private static class Job implements Comparable<Job> {
+		final GameTreeNode node;
+		final int move_number;
+		final boolean urgent;
+		final long order = sequence.getAndIncrement();
+
+		Job(GameTreeNode node, int move_number, boolean urgent) {
+			this.node = node;
+			this.move_number = move_number;
+			this.urgent = urgent;
+		}
+
+		// urgent jobs first, then by distance from the root (the root's move number is the same for every job), then FIFO
+		@Override
+		public int compareTo(Job o) {
+			if (urgent != o.urgent) {
+				return urgent ? -1 : 1;
+			}
+			if (move_number != o.move_number) {
+				return Integer.compare(move_number, o.move_number);
+			}
+			return Long.compare(order, o.order);
+		}
+	}
 
 	public static void add(GameTreeNode job) {
 		if (Tuner.use_heuristic_queue) {
 			int this_move_num = job.state_after_move.get().GetMoveNumber() - 1;
 			int current_move_num = AICore.GetCurrentMoveNumber();
 			if (this_move_num > current_move_num) {
-				queue.add(job);
+				Submit(job, false);
 			} else if (this_move_num == current_move_num) {
-				queue.push(job);
+				Submit(job, true);
 			}
 		}
 	}
 
 	public static void push(GameTreeNode job) {
 		if (Tuner.use_heuristic_queue) {
-			queue.push(job);
+			Submit(job, true);
 		}
 	}
 
-	public static void ProcessQueue() {
-		while(true) {
+	// queues `node` for evaluation whether or not the queue is enabled, starting the pool if it isn't running
+	public static void Submit(GameTreeNode node, boolean urgent) {
+		GameState board = node.state_after_move.get();
+		if (board == null) {
+			return;
+		}
+		ForkJoinPool p = Start();
+		jobs.add(new Job(node, board.GetMoveNumber(), urgent));
+		submitted.increment();
+		p.execute(HeuristicsQueue::RunNext);
+	}
+
+	public static synchronized ForkJoinPool Start() {
+		if (pool == null) {
+			ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setName("heuristics-" + thread.getPoolIndex());
+				return thread;
+			};
+			pool = new ForkJoinPool(Math.max(1, Tuner.evaluation_threads), factory, null, true);
+			started_at = System.nanoTime();
+		}
+		return pool;
+	}
+
+	// stops the workers and forgets every queued job
+	public static synchronized void Stop() {
+		if (pool != null) {
+			pool.shutdownNow();
 			try {
-				Debug.PrintThreadID("ProcessQueue");
-				int i = 0;
-				while (!Thread.currentThread().isInterrupted()) { // we only interrupt this thread when it is time to stop
-					GameTreeNode node = queue.poll();
-					if (node != null) {
-						GameState board = node.state_after_move.get();
-						if (board == null || node.move.get() == null) {
-							continue;
-						}
-						if (AICore.GetCurrentMoveNumber() - 1 >= board.GetMoveNumber()) {
-							continue;
-						}
-						CalculateHeuristicsAll(board, node, false);
-						i = Math.max(0, i - 1);
-					} else {
-						Thread.sleep(++i * 1500);
-					}
+				pool.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			pool = null;
+		}
+		cancelled.add(jobs.size());
+		jobs.clear();
+	}
+
+	// drops every job for a position the game has already moved past, returns how many were dropped
+	public static int CancelStale() {
+		int current_move_num = AICore.GetCurrentMoveNumber();
+		int[] dropped = {0};
+		// one pass under the queue's lock, removing jobs one at a time would search the queue for each
+		jobs.removeIf(job -> {
+			boolean stale = IsStale(job, current_move_num);
+			dropped[0] += stale ? 1 : 0;
+			return stale;
+		});
+		cancelled.add(dropped[0]);
+		return dropped[0];
+	}
+
+	private static boolean IsStale(Job job, int current_move_num) {
+		return current_move_num - 1 >= job.move_number || job.node.move.get() == null;
+	}
+
+	// evaluates the nearest job that is still worth evaluating
+	private static void RunNext() {
+		running.incrementAndGet(); // before the poll, so isProcessing never sees the job in neither place
+		try {
+			Job job;
+			while ((job = jobs.poll()) != null) {
+				if (IsStale(job, AICore.GetCurrentMoveNumber())) {
+					cancelled.increment();
+					continue;
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
-				continue;
+				CalculateHeuristicsAll(job.node.state_after_move.get(), job.node, false);
+				completed.increment();
+				return;
 			}
-			return;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			running.decrementAndGet();
 		}
 	}
 
 	public static boolean isProcessing() {
-		return !queue.isEmpty();
+		return !jobs.isEmpty() || running.get() > 0;
+	}
+
+	public static int GetQueueDepth() {
+		return jobs.size();
+	}
+
+	public static long GetCompleted() {
+		return completed.sum();
+	}
+
+	public static long GetCancelled() {
+		return cancelled.sum();
+	}
+
+	// evaluations per second since the pool started
+	public static double GetThroughput() {
+		double seconds = (System.nanoTime() - started_at) / 1e9;
+		return seconds > 0 ? completed.sum() / seconds : 0;
+	}
+
+	public static String Stats() {
+		return String.format("heuristics queue: depth %d, running %d, submitted %d, completed %d, cancelled %d, %.1f/s",
+				GetQueueDepth(), running.get(), submitted.sum(), GetCompleted(), GetCancelled(), GetThroughput());
 	}
 
 	public static void CalculateHeuristicsAll(GameState board, GameTreeNode node, boolean skip_propagation) {
@@ -78,27 +196,32 @@ public class HeuristicsQueue {
 		if (Tuner.use_amazongs_heuristic) {
 			FillAmazongs(board, h);
 		}
-		if (!h.is_ready.get()) {
-			h.is_ready.set(true);
+		Combine(board, node, skip_propagation);
+	}
+
+	// combines the filled heuristics into the node's value, once, then aggregates it (see BatchEvaluator too)
+	static void Combine(GameState board, GameTreeNode node, boolean skip_propagation) {
+		Heuristic h = node.heuristic;
+		if (h.claim(Heuristic.is_ready)) {
 			double term1 = 0;
 			double term2 = 0;
 			double w = 1;
 			if (Tuner.use_amazongs_heuristic) {
-				term1 = h.amazongs.get();
+				term1 = h.amazongs;
 			}
 			if (Tuner.use_territory_heuristic) {
-				double t = h.territory.get();
+				double t = h.territory;
 				term1 *= t;
 				term2 += t;
 			}
 			if (Tuner.use_mobility_heuristic) {
-				term2 += h.mobility.get();
+				term2 += h.mobility;
 			}
 			if (Tuner.use_winner_heuristic) {
-				w = h.winner.get();
+				w = h.winner;
 			}
 			double value = Maths.h(term1, term2, w);
-			h.value.set(value);
+			h.value = value;
 			if(!Tuner.use_winner_aggregate || Tuner.use_winner_heuristic || !board.CanGameContinue()) {
 				if (!skip_propagation) {
 					node.propagate();
@@ -110,35 +233,32 @@ public class HeuristicsQueue {
 	}
 
 	public static void FillAmazongs(GameState board, Heuristic h) {
-		if (!h.has_amazongs.get()) {
-			h.has_amazongs.set(true);
-			h.amazongs.set(Amazongs.CalculateHeuristic(board));
+		if (h.claim(Heuristic.has_amazongs)) {
+			h.amazongs = Amazongs.CalculateHeuristic(board);
 		}
 	}
 
 	public static void FillTerritory(GameState board, Heuristic h) {
-		if (!h.has_territory.get()) {
-			h.has_territory.set(true);
-			h.territory.set(Territory.CalculateHeuristic(board));
+		if (h.claim(Heuristic.has_territory)) {
+			h.territory = Territory.CalculateHeuristic(board);
 		}
 	}
 
 	public static void FillWinner(GameState board, Heuristic h) {
-		if (!h.has_winner.get()) {
-			h.has_winner.set(true);
-			h.winner.set(Winner.CalculateHeuristic(board));
+		if (h.claim(Heuristic.has_winner)) {
+			h.winner = Winner.CalculateHeuristic(board);
 		}
 	}
 
 	public static void FillMobility(GameState board, Heuristic h) {
-		h.mobility.set(Mobility.CalculateHeuristic(board));
+		h.mobility = Mobility.CalculateHeuristic(board);
 	}
 
 	public static void FillFreedom(GameState board, Heuristic h) {
-		h.mobility.set(Mobility.CalculateFreedomHeuristic(board));
+		h.mobility = Mobility.CalculateFreedomHeuristic(board);
 	}
 
 	public static void FillReduction(GameState board, Heuristic h) {
-		h.mobility.set(Mobility.CalculateReductionHeuristic(board));
+		h.mobility = Mobility.CalculateReductionHeuristic(board);
 	}
 }
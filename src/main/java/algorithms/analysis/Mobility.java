@@ -1,6 +1,7 @@
 package algorithms.analysis;
 
 import algorithms.search.MoveCompiler;
+import algorithms.search.RayTable;
 import data.BoardPiece;
 import data.structures.GameState;
 import tools.Maths;
@@ -26,27 +27,16 @@ public class Mobility {
     }
 
     private static int count_first_degree_positions(GameState board, BoardPiece[] pieces) {
-        int[] positions = new int[pieces.length];
-        for (int i = 0; i < 4; ++i) {
-            int index = pieces[i].CalculateIndex();
-            positions[i] = index;
-        }
+        long occupied_lo = board.GetOccupied(0);
+        long occupied_hi = board.GetOccupied(1);
         int moves = 0;
-        int[][] first_degree_positions = MoveCompiler.GetOpenPositions(board, positions,false);
-        for (int[] scan_direction : first_degree_positions) {
-            if (scan_direction != null) {
-                for (int tile_index : scan_direction) {
-                    if (tile_index < 0) {
-                        break;
-                    }
-                    moves++;
-                }
-            }
+        for (BoardPiece piece : pieces) {
+            moves += RayTable.Count(occupied_lo, occupied_hi, piece.CalculateIndex());
         }
         return moves;
     }
 
     private static int count_first_degree_moves(GameState board, BoardPiece[] pieces) {
-        return MoveCompiler.GetMoveList(board, pieces,true, false).size();
+        return MoveCompiler.CountMoves(board, pieces);
     }
 }
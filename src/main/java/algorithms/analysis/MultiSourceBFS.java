@@ -0,0 +1,101 @@
+package algorithms.analysis;
+
+import algorithms.search.RayTable;
+import data.structures.GameState;
+import tools.Tuner;
+
+import java.util.Arrays;
+
+/**
+ * MultiSourceBFS computes how many moves it takes to reach every tile from the nearest of a set of source tiles, moving
+ * either like a queen (any distance along the 8 rays) or like a king (one tile in any of the 8 directions), through
+ * empty tiles only. The queue is a ring of tile indices kept per thread, so the search doesn't allocate, and it ends
+ * as soon as the frontier is empty.
+ */
+public class MultiSourceBFS {
+    public static final int unreached = -1;
+    private static final int[][] king_neighbours = new int[Tuner.state_size][];
+    private static final ThreadLocal<int[]> queue = ThreadLocal.withInitial(() -> new int[Tuner.state_size]);
+
+    public enum metric {
+        QUEEN,
+        KING
+    }
+
+    static {
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            int[] buffer = new int[RayTable.directions];
+            int count = 0;
+            for (int d = 0; d < RayTable.directions; ++d) {
+                int[] ray = RayTable.GetRay(tile, d);
+                if (ray.length > 0) {
+                    buffer[count++] = ray[0];
+                }
+            }
+            king_neighbours[tile] = Arrays.copyOf(buffer, count);
+        }
+    }
+
+    public static int[] GetKingNeighbours(int tile) {
+        return king_neighbours[tile];
+    }
+
+    public static int Run(GameState board, int[] sources, int offset, int count, metric m, int[] distances) {
+        return Run(board.GetOccupied(0), board.GetOccupied(1), sources, offset, count, m, distances);
+    }
+
+    /* Fills `distances` with the number of moves from the nearest source, sources are 0 and tiles that can't be reached
+     * are `unreached`. Sources are sources[offset, offset + count), negative entries are skipped.
+     * Returns the number of tiles reached (not counting the sources).
+     * */
+    public static int Run(long occupied_lo, long occupied_hi, int[] sources, int offset, int count, metric m, int[] distances) {
+        Arrays.fill(distances, unreached);
+        int[] q = queue.get();
+        int head = 0;
+        int tail = 0;
+        int size = 0;
+        for (int i = offset; i < offset + count; ++i) {
+            int source = sources[i];
+            if (source >= 0 && distances[source] != 0) {
+                distances[source] = 0;
+                q[tail] = source;
+                tail = (tail + 1) % q.length;
+                ++size;
+            }
+        }
+        int reached = 0;
+        while (size > 0) {
+            int u = q[head];
+            head = (head + 1) % q.length;
+            --size;
+            int next = distances[u] + 1;
+            if (m == metric.QUEEN) {
+                for (int d = 0; d < RayTable.directions; ++d) {
+                    for (int t : RayTable.GetRay(u, d)) {
+                        if (RayTable.IsOccupied(occupied_lo, occupied_hi, t)) {
+                            break;
+                        }
+                        if (distances[t] == unreached) {
+                            distances[t] = next;
+                            q[tail] = t;
+                            tail = (tail + 1) % q.length;
+                            ++size;
+                            ++reached;
+                        }
+                    }
+                }
+            } else {
+                for (int t : king_neighbours[u]) {
+                    if (distances[t] == unreached && !RayTable.IsOccupied(occupied_lo, occupied_hi, t)) {
+                        distances[t] = next;
+                        q[tail] = t;
+                        tail = (tail + 1) % q.length;
+                        ++size;
+                        ++reached;
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,195 @@
+package algorithms.analysis;
+
+import data.structures.GameState;
+import tools.Maths;
+import tools.Tuner;
+
+import java.util.Arrays;
+
+/**
+ * PackedScoring evaluates the Amazongs and Territory sums over byte distance lanes, one byte per tile and queen, in the
+ * layout DistanceFields keeps ([queen * state_size + tile], 0 on the queen's tile, DistanceFields.unreachable otherwise).
+ * Powers of two come from tables and the comparisons from tables or selects, so the tile loops run straight through
+ * without branches or calls to Math.pow. The results match the scalar loops (see mode).
+ */
+public class PackedScoring {
+    public enum mode {
+        SCALAR, // the original per tile loops over double distances
+        PACKED
+    }
+
+    private static final int lanes = DistanceFields.unreachable + 1;
+    private static final double[] inverse_powers = new double[lanes]; // 2^-d, 0 for unreachable tiles
+    private static final double[] finite = new double[lanes]; // 1 if d is reachable
+    private static final double[] king_ratio = new double[2 * lanes - 1]; // clamp((b - a) / 6), indexed by b - a + unreachable
+    private static final double[] delta = {-1.0, Tuner.move_first_advantage, 1.0}; // Maths.delta, indexed by signum(b - a) + 1
+
+    private static class Lanes {
+        final int[] queens = new int[8];
+        final byte[] queen = new byte[8 * Tuner.state_size];
+        final byte[] king = new byte[8 * Tuner.state_size];
+        final byte[][] best_queen = {new byte[Tuner.state_size], new byte[Tuner.state_size]};
+        final byte[][] best_king = {new byte[Tuner.state_size], new byte[Tuner.state_size]};
+        final byte[] blocked = new byte[Tuner.state_size]; // unreachable on occupied tiles, so every minimum becomes unreachable
+        final double[] open = new double[Tuner.state_size]; // 1 on empty tiles
+        final int[] neighbours = new int[Tuner.state_size]; // empty king neighbours of each tile
+        final int[] distances = new int[Tuner.state_size];
+        final double[][] alphas = {new double[4], new double[4]};
+    }
+    private static final ThreadLocal<Lanes> scratch = ThreadLocal.withInitial(Lanes::new);
+
+    static {
+        for (int d = 0; d < lanes; ++d) {
+            boolean reachable = d != DistanceFields.unreachable;
+            inverse_powers[d] = reachable ? Maths.pow2(-d) : 0;
+            finite[d] = reachable ? 1 : 0;
+        }
+        for (int i = 0; i < king_ratio.length; ++i) {
+            king_ratio[i] = Math.min(1, Math.max(-1, (i - DistanceFields.unreachable) / 6.0));
+        }
+    }
+
+    // Amazongs.CalculateHeuristic over lanes filled from scratch, the FULL distance mode
+    static double Amazongs(GameState board) {
+        Lanes s = scratch.get();
+        board.GetQueenTiles(s.queens);
+        for (int q = 0; q < s.queens.length; ++q) {
+            if (s.queens[q] >= 0) {
+                Fill(board, s, q, MultiSourceBFS.metric.QUEEN, s.queen);
+                Fill(board, s, q, MultiSourceBFS.metric.KING, s.king);
+            }
+        }
+        return Amazongs(board, s.queens, s.queen, s.king);
+    }
+
+    static double Amazongs(GameState board, DistanceFields fields) {
+        return Amazongs(board, fields.queens, fields.QueenLanes(), fields.KingLanes());
+    }
+
+    private static void Fill(GameState board, Lanes s, int q, MultiSourceBFS.metric m, byte[] lanes) {
+        MultiSourceBFS.Run(board, s.queens, q, 1, m, s.distances);
+        int base = q * Tuner.state_size;
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            int d = s.distances[tile];
+            lanes[base + tile] = d == MultiSourceBFS.unreached ? DistanceFields.unreachable : (byte) d;
+        }
+    }
+
+    /* `queens` holds player 1's queens in [0,3] and player 2's in [4,7], missing queens are -1.
+     * The sums are taken in the same order as the scalar loop, so the result is exactly the scalar one.
+     * */
+    private static double Amazongs(GameState board, int[] queens, byte[] queen, byte[] king) {
+        Lanes s = scratch.get();
+        LoadBoard(board, s);
+        // "p1" is the player that just moved unless the pieces are static, as in Amazongs
+        int a = Tuner.use_static_pieces ? 0 : board.GetNextPlayerTurn() - 1;
+        int b = 1 - a;
+        Reduce(queens, a * 4, queen, s.blocked, s.best_queen[0]);
+        Reduce(queens, a * 4, king, s.blocked, s.best_king[0]);
+        Reduce(queens, b * 4, queen, s.blocked, s.best_queen[1]);
+        Reduce(queens, b * 4, king, s.blocked, s.best_king[1]);
+        byte[] q1 = s.best_queen[0];
+        byte[] q2 = s.best_queen[1];
+        byte[] k1 = s.best_king[0];
+        byte[] k2 = s.best_king[1];
+        double c1 = 0;
+        double c2 = 0;
+        double w = 0;
+        double t1 = 0;
+        double t2 = 0;
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            int qa = q1[tile];
+            int qb = q2[tile];
+            int ka = k1[tile];
+            int kb = k2[tile];
+            double open = s.open[tile];
+            t1 += open * delta[Integer.signum(qb - qa) + 1];
+            c1 += inverse_powers[qa] - inverse_powers[qb];
+            c2 += king_ratio[kb - ka + DistanceFields.unreachable];
+            w += finite[qa] * finite[qb] * inverse_powers[Math.abs(qa - qb)];
+            t2 += open * delta[Integer.signum(kb - ka) + 1];
+        }
+        c1 *= 2;
+        double term1 = Tuner.t1c * Maths.f1(w) * t1;
+        double term2 = Maths.f2(w) * c1;
+        double term3 = Maths.f3(w) * c2;
+        double term4 = Maths.f4(w) * t2;
+        double t = Tuner.tc * (term1 + term2 + term3 + term4);
+        double m = Maths.sumf(w, Alphas(s, queens, b * 4, queen, king, q1, s.alphas[1]))
+                - Maths.sumf(w, Alphas(s, queens, a * 4, queen, king, q2, s.alphas[0]));
+        return t + m;
+    }
+
+    private static void LoadBoard(GameState board, Lanes s) {
+        long lo = board.GetOccupied(0);
+        long hi = board.GetOccupied(1);
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            long word = tile < 64 ? lo : hi;
+            int empty = 1 - (int) ((word >>> (tile & 63)) & 1);
+            s.blocked[tile] = (byte) ((1 - empty) * DistanceFields.unreachable);
+            s.open[tile] = empty;
+        }
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            int count = 0;
+            for (int n : MultiSourceBFS.GetKingNeighbours(tile)) {
+                count += s.blocked[n] == 0 ? 1 : 0;
+            }
+            s.neighbours[tile] = count;
+        }
+    }
+
+    // the lane wise minimum over one player's queens, occupied tiles (including the queens' own) become unreachable
+    private static void Reduce(int[] queens, int first, byte[] lanes, byte[] blocked, byte[] best) {
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            best[tile] = DistanceFields.unreachable;
+        }
+        for (int q = first; q < first + 4; ++q) {
+            if (queens[q] < 0) {
+                continue;
+            }
+            int base = q * Tuner.state_size;
+            for (int tile = 0; tile < Tuner.state_size; ++tile) {
+                best[tile] = (byte) Math.min(best[tile], lanes[base + tile]);
+            }
+        }
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            best[tile] |= blocked[tile];
+        }
+    }
+
+    /* Each queen's alpha: tiles one queen move away that the opponent can also reach, weighted by 2^-(king distance)
+     * and the tile's empty neighbours. Returns one alpha per queen the player has.
+     * */
+    private static double[] Alphas(Lanes s, int[] queens, int first, byte[] queen, byte[] king, byte[] opponent_best, double[] alphas) {
+        int count = 0;
+        for (int q = first; q < first + 4; ++q) {
+            if (queens[q] < 0) {
+                continue;
+            }
+            int base = q * Tuner.state_size;
+            double alpha = 0;
+            for (int tile = 0; tile < Tuner.state_size; ++tile) {
+                double adjacent = queen[base + tile] == 1 ? 1 : 0;
+                alpha += adjacent * finite[opponent_best[tile]] * inverse_powers[king[base + tile]] * s.neighbours[tile];
+            }
+            alphas[count++] = alpha;
+        }
+        return count == alphas.length ? alphas : Arrays.copyOf(alphas, count);
+    }
+
+    // Territory.calculate_territories' sums, totals gets {ours, theirs}
+    static void Territory(int[] distance_map_a, int[] distance_map_b, double[] totals) {
+        double aw = 0;
+        double bw = 0;
+        for (int tile = 0; tile < Tuner.state_size; tile++) {
+            int ad1 = Math.max(0, distance_map_a[tile]);
+            int bd1 = Math.max(0, distance_map_b[tile]);
+            double p = Maths.pow2(Math.abs(ad1 - bd1));
+            double ahead = ad1 > bd1 ? 1 : 0;
+            aw += ahead * p;
+            bw += (1 - ahead) * p;
+        }
+        totals[0] = aw;
+        totals[1] = bw;
+    }
+}
@@ -1,12 +1,15 @@
 package algorithms.analysis;
 
-import algorithms.search.MoveCompiler;
-import data.BoardPiece;
 import data.structures.GameState;
 import tools.Maths;
 import tools.Tuner;
 
+import java.util.Arrays;
+
 public class Territory {
+    // queen tiles, then each player's distance map
+    private static final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[][]{new int[8], new int[Tuner.state_size], new int[Tuner.state_size]});
+    private static final ThreadLocal<double[]> totals_buffer = ThreadLocal.withInitial(() -> new double[2]);
 
     private static class TerritoryData {
         double ours = 0;
@@ -20,83 +23,87 @@ public class Territory {
     }
 
     public static double CalculateHeuristic(GameState board) {
-        var counts = calculate_territories(board);
+        return CalculateHeuristic(board, Tuner.use_packed_scoring ? PackedScoring.mode.PACKED : PackedScoring.mode.SCALAR);
+    }
+
+    public static double CalculateHeuristic(GameState board, PackedScoring.mode scoring) {
+        var counts = calculate_territories(board, scoring);
         double total = counts.ours + counts.theirs;
         double heuristic = counts.ours / total;
         //heuristic = Maths.remap_value(heuristic,0, 1,0.07,5);
         return heuristic;
     }
 
-    private static TerritoryData calculate_territories(GameState board) {
-        BoardPiece[] pa;
-        BoardPiece[] pb;
+    /* The same value from distance fields already built for `board` (see BatchEvaluator), without running the searches.
+     * The minimum over a player's queen lanes is the multi source distance, and unreachable lanes count as 0 like the
+     * tiles the search never reaches.
+     * */
+    static double CalculateHeuristic(GameState board, DistanceFields fields) {
+        int pa = Tuner.use_static_pieces ? board.GetNextPlayerTurn() : 1;
+        int pb = 3 - pa;
+        int[][] data = scratch.get();
+        int[] distance_map_a = data[1];
+        int[] distance_map_b = data[2];
+        Reduce(fields, (pa - 1) * 4, distance_map_a);
+        Reduce(fields, (pb - 1) * 4, distance_map_b);
+        double[] totals = totals_buffer.get();
+        PackedScoring.Territory(distance_map_a, distance_map_b, totals);
+        return totals[0] / (totals[0] + totals[1]);
+    }
+
+    private static void Reduce(DistanceFields fields, int first, int[] distance_map) {
+        byte[] lanes = fields.QueenLanes();
+        Arrays.fill(distance_map, DistanceFields.unreachable);
+        for (int q = first; q < first + 4; ++q) {
+            if (fields.queens[q] < 0) {
+                continue;
+            }
+            int base = q * Tuner.state_size;
+            for (int tile = 0; tile < Tuner.state_size; ++tile) {
+                distance_map[tile] = Math.min(distance_map[tile], lanes[base + tile]);
+            }
+        }
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            distance_map[tile] = distance_map[tile] == DistanceFields.unreachable ? 0 : distance_map[tile];
+        }
+    }
+
+    private static TerritoryData calculate_territories(GameState board, PackedScoring.mode scoring) {
+        int pa;
+        int pb;
         if(!Tuner.use_static_pieces){
-            pa = board.GetPlayerPieces(1);
-            pb = board.GetPlayerPieces(2);
+            pa = 1;
+            pb = 2;
         } else {
-            pa = board.GetPlayerPieces(board.GetNextPlayerTurn());
-            pb = board.GetPlayerPieces(board.GetPlayerTurn());
+            pa = board.GetNextPlayerTurn();
+            pb = board.GetPlayerTurn();
+        }
+        int[][] data = scratch.get();
+        int[] queens = data[0];
+        int[] distance_map_a = data[1];
+        int[] distance_map_b = data[2];
+        board.GetQueenTiles(queens);
+        MultiSourceBFS.Run(board, queens, (pa - 1) * 4, 4, MultiSourceBFS.metric.QUEEN, distance_map_a);
+        MultiSourceBFS.Run(board, queens, (pb - 1) * 4, 4, MultiSourceBFS.metric.QUEEN, distance_map_b);
+        if (scoring == PackedScoring.mode.PACKED) {
+            double[] totals = totals_buffer.get();
+            PackedScoring.Territory(distance_map_a, distance_map_b, totals);
+            return new TerritoryData(totals[0], totals[1]);
         }
-        int[] distance_map_a = calculate_distance_map(board, pa);
-        int[] distance_map_b = calculate_distance_map(board, pb);
         double aw = 0;
         double bw = 0;
         for (int tile = 0; tile < distance_map_a.length; tile++) {
-            int ad1 = distance_map_a[tile];
-            int bd1 = distance_map_b[tile];
+            // tiles nobody reaches (or stands on) count as distance 0
+            int ad1 = Math.max(0, distance_map_a[tile]);
+            int bd1 = Math.max(0, distance_map_b[tile]);
             int dd1 = Math.abs(ad1 - bd1);
             if(ad1 > bd1) {
-                aw += Math.pow(2, dd1 );
+                aw += Maths.pow2(dd1);
             } else {
-                bw += Math.pow(2, dd1 );
+                bw += Maths.pow2(dd1);
             }
         }
         return new TerritoryData(aw, bw);
     }
 
-    private static int[] calculate_distance_map(GameState board, BoardPiece[] pieces) {
-        int[] distance_map = new int[Tuner.state_size];
-        find_shortest_distances(board, MoveCompiler.ConvertPositions(pieces), distance_map, 1);
-        return distance_map;
-    }
-
-    private static void find_shortest_distances(GameState board, int[] starting_positions, int[] distance_map, int distance) {
-        int[][] new_positions = MoveCompiler.GetOpenPositions(board, starting_positions, false); //[starting index][index of open positions]
-        for (int[] position_list : new_positions) {
-            if (position_list != null) {
-                for (int index : position_list) {
-                    if (index == -1) {
-                        break;
-                    }
-                    if (distance_map[index] == 0 || distance_map[index] > distance) {
-                        distance_map[index] = distance;
-                    }
-                }
-            }
-        }
-
-        for (int[] position_list : new_positions) {
-            if (position_list != null) {
-                find_shortest_distances(board, prune_positions(distance_map, position_list, distance), distance_map, distance + 1);
-            }
-        }
-    }
-
-    private static int[] prune_positions(int[] distance_map, int[] positions, int distance) {
-        int[] pruned_positions = new int[positions.length];
-        int i = 0;
-        for (int index : positions) {
-            if (index < 0) {
-                break;
-            }
-            if (distance_map[index] >= distance) {
-                pruned_positions[i++] = index;
-            }
-        }
-        if (i < pruned_positions.length) {
-            pruned_positions[i] = -1;
-        }
-        return pruned_positions;
-    }
-
 }
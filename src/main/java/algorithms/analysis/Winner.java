@@ -1,20 +1,11 @@
 package algorithms.analysis;
 
-import algorithms.search.MoveCompiler;
-import data.BoardPiece;
 import data.structures.GameState;
-import data.Position;
 import tools.Tuner;
 
-import java.util.LinkedList;
-import java.util.Objects;
-import java.util.Queue;
-
 public class Winner {
-    private static class CountingAlgorithmData {
-        public int[] visited = new int[Tuner.state_size];
-        public Queue<Integer> blankspace = new LinkedList<>();
-    }
+    // queen tiles, then the distance map
+    private static final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[][]{new int[8], new int[Tuner.state_size]});
 
     public static double CalculateHeuristic(GameState board) {
         if(!board.CanGameContinue()) {
@@ -48,34 +39,8 @@ public class Winner {
     }
 
     private static int count_accessible_positions(GameState board, int player) {
-        int count = 0;
-        CountingAlgorithmData data = new CountingAlgorithmData();
-        for (BoardPiece p : Objects.requireNonNull(board.GetPlayerPieces(player))) {
-            enqueue_neighbours(data, p.CalculateIndex(), board);
-        }
-
-        while (!data.blankspace.isEmpty()) {
-            int value = data.blankspace.poll();
-            count++;
-            enqueue_neighbours(data, value, board);
-        }
-
-        return count;
-    }
-
-    private static void enqueue_neighbours(CountingAlgorithmData data, int index, GameState board) {
-        Position[] neighbours = MoveCompiler.GetNeighbours(index);
-        for (Position p : neighbours) {
-            if (p.IsValid()) {
-                int neighbour = p.CalculateIndex();
-                if (data.visited[neighbour] > 0) {
-                    continue;
-                }
-                data.visited[neighbour] = neighbour;
-                if (board.ReadTile(neighbour) == 0) {
-                    data.blankspace.offer(neighbour);
-                }
-            }
-        }
+        int[][] data = scratch.get();
+        board.GetQueenTiles(data[0]);
+        return MultiSourceBFS.Run(board, data[0], (player - 1) * 4, 4, MultiSourceBFS.metric.KING, data[1]);
     }
 }
@@ -0,0 +1,325 @@
+package algorithms.search;
+
+import data.Move;
+import data.structures.GameState;
+import data.structures.Zobrist;
+import tools.Tuner;
+
+import java.util.Arrays;
+
+/**
+ * AlphaBeta is an iterative deepening principal variation search.
+ * Moves are ordered by the transposition table's best move, then two killer moves per ply, then the history tables
+ * (indexed by queen move and by queen destination + arrow). The search plays moves on its own copy of the occupancy
+ * words, so nothing is allocated once the per-ply buffers exist.
+ * The search stops when its thread is interrupted, the best move of the last completed iteration is kept (see GetBestMove).
+ * One instance is meant to be used by one thread.
+ */
+public class AlphaBeta {
+    private static final int win = 1_000_000;
+    private static final int infinity = win + 1;
+    private static final int max_ply = Tuner.state_size;
+    private static final int interrupt_check_interval = 1024;
+    // transposition table bounds
+    private static final byte exact = 0;
+    private static final byte lower = 1;
+    private static final byte upper = 2;
+
+    private final int table_mask;
+    private final long[] table_keys;
+    private final int[] table_moves;
+    private final int[] table_scores;
+    private final byte[] table_depths;
+    private final byte[] table_bounds;
+
+    private final int[][] killers = new int[max_ply][2];
+    private final int[] queen_history = new int[1 << (2 * Move.index_bits)];
+    private final int[] arrow_history = new int[1 << (2 * Move.index_bits)];
+    private final int[][] move_buffers = new int[max_ply][];
+    private final long[][] order_buffers = new long[max_ply][];
+
+    // the position being searched
+    private final long[] occupied = new long[2];
+    private final int[] queens = new int[8]; // [0,3] belong to player 1, [4,7] to player 2
+    private final int[] region_moves = new int[2];
+    private int player_turn;
+    private long key;
+    private long nodes;
+    private boolean aborted;
+    private int root_move;
+    private int root_ply; // arrows on the board at the root, so win/loss scores mean the same thing in every search
+
+    // results of the last completed iteration, replaced as a whole so readers never pair one position's key with another's move
+    private static final class Result {
+        final long key;
+        final int move;
+        final int score;
+        final int depth;
+
+        Result(long key, int move, int score, int depth) {
+            this.key = key;
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+        }
+    }
+    private volatile Result result = null;
+
+    public AlphaBeta() {
+        int size = Integer.highestOneBit(Tuner.alpha_beta_table_size);
+        table_mask = size - 1;
+        table_keys = new long[size];
+        table_moves = new int[size];
+        table_scores = new int[size];
+        table_depths = new byte[size];
+        table_bounds = new byte[size];
+    }
+
+    /* Searches `board` one ply deeper at a time until the thread is interrupted or the outcome is known.
+     * Returns true if the outcome is known (every line was searched to the end of the game).
+     * */
+    public boolean Search(GameState board) {
+        Load(board);
+        long root_key = key;
+        int empty_tiles = Tuner.state_size - Long.bitCount(occupied[0]) - Long.bitCount(occupied[1]);
+        root_ply = Tuner.state_size - empty_tiles - queens.length;
+        for (int[] k : killers) {
+            k[0] = k[1] = -1;
+        }
+        Arrays.fill(queen_history, 0);
+        Arrays.fill(arrow_history, 0);
+        aborted = false;
+        RegionSolver.Prepare(board);
+        for (int depth = 1; depth <= empty_tiles; ++depth) {
+            int score = Search(depth, 0, -infinity, infinity);
+            if (aborted) {
+                return false;
+            }
+            // iterations only ever publish complete results
+            result = new Result(root_key, root_move, score, depth);
+            if (IsProven(score)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    // returns the packed best move found for `board`, or -1 if no iteration has completed for it
+    public int GetBestMove(GameState board) {
+        Result r = Find(board);
+        return r != null ? r.move : -1;
+    }
+
+    // true if the last completed iteration on `board` found a forced win or loss
+    public boolean IsSolved(GameState board) {
+        Result r = Find(board);
+        return r != null && IsProven(r.score);
+    }
+
+    public int GetCompletedDepth(GameState board) {
+        Result r = Find(board);
+        return r != null ? r.depth : 0;
+    }
+
+    private Result Find(GameState board) {
+        Result r = result;
+        return r != null && r.key == board.GetZobristKey() ? r : null;
+    }
+
+    private static boolean IsProven(int score) {
+        return Math.abs(score) >= win - max_ply;
+    }
+
+    private void Load(GameState board) {
+        occupied[0] = board.GetOccupied(0);
+        occupied[1] = board.GetOccupied(1);
+        board.GetQueenTiles(queens);
+        player_turn = board.GetPlayerTurn();
+        key = board.GetZobristKey();
+    }
+
+    // negamax, scores are from the perspective of the player to move
+    private int Search(int depth, int ply, int alpha, int beta) {
+        if (++nodes % interrupt_check_interval == 0 && Thread.currentThread().isInterrupted()) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        int slot = (int) key & table_mask;
+        int table_move = -1;
+        if (table_keys[slot] == key) {
+            table_move = table_moves[slot];
+            if (table_depths[slot] >= depth && ply > 0) {
+                int score = table_scores[slot];
+                byte bound = table_bounds[slot];
+                if (bound == exact || (bound == lower && score >= beta) || (bound == upper && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        if (ply > 0 && root_ply + ply >= Tuner.region_solver_min_arrows
+                && RegionSolver.Solve(occupied[0], occupied[1], queens, region_moves, Tuner.region_solver_search_budget)) {
+            return SolvedScore(ply);
+        }
+        if (depth == 0) {
+            return Evaluate(ply);
+        }
+        int count = GenerateMoves(ply);
+        if (count == 0) {
+            return -win + root_ply + ply; // the player to move has lost, sooner is worse
+        }
+        long[] order = OrderMoves(ply, count, table_move);
+        int[] moves = move_buffers[ply];
+        int original_alpha = alpha;
+        int best_score = -infinity;
+        int best_move = -1;
+        for (int i = 0; i < count; ++i) {
+            int move = moves[(int) order[i] & 0xFFFF];
+            int queen = MakeMove(move);
+            int score;
+            if (i == 0) {
+                score = -Search(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                score = -Search(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -Search(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            UndoMove(move, queen);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best_score) {
+                best_score = score;
+                best_move = move;
+                if (ply == 0) {
+                    root_move = move;
+                }
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                if (killers[ply][0] != move) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = move;
+                }
+                queen_history[move >>> Move.index_bits] += depth * depth;
+                arrow_history[move & ((1 << (2 * Move.index_bits)) - 1)] += depth * depth;
+                break;
+            }
+        }
+        table_keys[slot] = key;
+        table_moves[slot] = best_move;
+        table_scores[slot] = best_score;
+        table_depths[slot] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        table_bounds[slot] = best_score <= original_alpha ? upper : best_score >= beta ? lower : exact;
+        return best_score;
+    }
+
+    /* The queens are walled off from each other, so the player to move loses once they run out of moves unless they have
+     * more moves left than their opponent. The score says on which ply that happens.
+     * */
+    private int SolvedScore(int ply) {
+        int ours = region_moves[player_turn - 1];
+        int theirs = region_moves[2 - player_turn];
+        if (ours > theirs) {
+            return win - (root_ply + ply + 2 * theirs + 1);
+        }
+        return -win + root_ply + ply + 2 * ours;
+    }
+
+    // the difference in tiles each side's queens can reach in one move
+    private int Evaluate(int ply) {
+        int ours = Reach(player_turn == 1 ? 0 : 4);
+        if (ours == 0) {
+            return -win + root_ply + ply;
+        }
+        return ours - Reach(player_turn == 1 ? 4 : 0);
+    }
+
+    private int Reach(int offset) {
+        int reach = 0;
+        for (int i = offset; i < offset + 4; ++i) {
+            if (queens[i] >= 0) {
+                reach += RayTable.Count(occupied[0], occupied[1], queens[i]);
+            }
+        }
+        return reach;
+    }
+
+    private int GenerateMoves(int ply) {
+        if (move_buffers[ply] == null) {
+            move_buffers[ply] = MoveCompiler.NewMoveBuffer();
+            order_buffers[ply] = new long[MoveCompiler.max_moves];
+        }
+        int[] buffer = move_buffers[ply];
+        int count = 0;
+        int offset = player_turn == 1 ? 0 : 4;
+        for (int i = offset; i < offset + 4; ++i) {
+            if (queens[i] >= 0) {
+                count = MoveCompiler.GetMoves(occupied[0], occupied[1], queens[i], buffer, count);
+            }
+        }
+        return count;
+    }
+
+    /* Sorts the move indices of this ply best first.
+     * Each entry is the negated ordering score above the move's buffer index, so an ascending sort puts the best first.
+     * */
+    private long[] OrderMoves(int ply, int count, int table_move) {
+        int[] moves = move_buffers[ply];
+        long[] order = order_buffers[ply];
+        for (int i = 0; i < count; ++i) {
+            int move = moves[i];
+            long score;
+            if (move == table_move) {
+                score = Integer.MAX_VALUE;
+            } else if (move == killers[ply][0]) {
+                score = Integer.MAX_VALUE - 1;
+            } else if (move == killers[ply][1]) {
+                score = Integer.MAX_VALUE - 2;
+            } else {
+                score = (long) queen_history[move >>> Move.index_bits] + arrow_history[move & ((1 << (2 * Move.index_bits)) - 1)];
+            }
+            order[i] = (-score << 16) | i;
+        }
+        Arrays.sort(order, 0, count);
+        return order;
+    }
+
+    // plays `move` for the player to move, returns the index of the queen that moved
+    private int MakeMove(int move) {
+        int start = Move.Start(move);
+        int next = Move.Next(move);
+        int arrow = Move.Arrow(move);
+        int queen = player_turn == 1 ? 0 : 4;
+        while (queens[queen] != start) {
+            ++queen;
+        }
+        queens[queen] = next;
+        Toggle(start);
+        Toggle(next);
+        Toggle(arrow);
+        key ^= Zobrist.TileKey(start, player_turn) ^ Zobrist.TileKey(next, player_turn) ^ Zobrist.TileKey(arrow, 3) ^ Zobrist.side_key;
+        player_turn = 3 - player_turn;
+        return queen;
+    }
+
+    private void UndoMove(int move, int queen) {
+        player_turn = 3 - player_turn;
+        int start = Move.Start(move);
+        int next = Move.Next(move);
+        int arrow = Move.Arrow(move);
+        queens[queen] = start;
+        Toggle(start);
+        Toggle(next);
+        Toggle(arrow);
+        key ^= Zobrist.TileKey(start, player_turn) ^ Zobrist.TileKey(next, player_turn) ^ Zobrist.TileKey(arrow, 3) ^ Zobrist.side_key;
+    }
+
+    private void Toggle(int tile) {
+        occupied[tile >>> 6] ^= 1L << (tile & 63);
+    }
+}
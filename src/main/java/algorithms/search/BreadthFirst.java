@@ -1,9 +1,11 @@
 package algorithms.search;
 
+import algorithms.analysis.BatchEvaluator;
 import algorithms.analysis.HeuristicsQueue;
 import data.structures.GameTreeNode;
 import data.structures.GameState;
 import data.structures.GameTree;
+import data.structures.GameTreeEvictor;
 import data.Move;
 import tools.Debug;
 import tools.Tuner;
@@ -27,14 +29,21 @@ public class BreadthFirst {
     }
 
     private static void ExploreGameTree(GameState board, GameTreeNode parent, int depth){
+        if(GameTreeEvictor.IsOverBudget()){
+            return; // the tree is as big as we can afford, let the evictor catch up before we expand anything else
+        }
         if(board.CanGameContinue() && !Thread.currentThread().isInterrupted()) {
             ArrayList<Move> moves = MoveCompiler.GetMoveList(board, board.GetTurnPieces(), true);
             if (moves == null || moves.isEmpty()) {
                 return;
             }
             Queue<GameTreeNode> branch_jobs = new LinkedList<>();
+            ArrayList<GameTreeNode> siblings = new ArrayList<>(); // new positions, evaluated together once they're all made
+            ArrayList<GameTreeNode> queued = new ArrayList<>(); // new positions left to HeuristicsQueue
             for(Move m : moves){
                 if(Thread.currentThread().isInterrupted()){
+                    Enqueue(parent, siblings);
+                    Enqueue(parent, queued);
                     return;
                 }
                 GameState new_state = new GameState(board);
@@ -42,25 +51,30 @@ public class BreadthFirst {
                     GameTreeNode node = GameTree.get(new_state); // GameTreeNode might already exist for this state [original_state + move]
                     if (node == null) {
                         // LocalState is a new position
-                        node = new GameTreeNode(m, parent, new_state);
-                        parent.adopt(node);
                         if(Tuner.use_heuristic_queue && depth > 1) {
-                            HeuristicsQueue.add(node);
+                            node = new GameTreeNode(m, null, new_state);
+                            queued.add(node);
                         } else {
-                            HeuristicsQueue.CalculateHeuristicsAll(new_state, node, true);
+                            node = new GameTreeNode(m, null, new_state);
+                            siblings.add(node); // linked in once it's evaluated, so no other search finds it half done
                         }
-                        GameTree.put(node);
                     } else { //no idea why parent == node
                         // This LocalState + Node have already been seen once.
                         // This might represent branches merging so..
                         // run the adoption procedure to ensure linkage and propagation of the heuristic (only one link, and only propagates if node's heuristic is non-zero)
-                        parent.adopt(node);
+                        parent.adopt(node, m.Packed());
                     }
                     if (parent != node) {
                         branch_jobs.add(node);
                     }
                 }
             }
+            Enqueue(parent, queued);
+            BatchEvaluator.Evaluate(siblings, true);
+            parent.adopt_all(siblings); // one copy of the parent's edges for the whole expansion
+            for(GameTreeNode node : siblings){
+                GameTree.put(node);
+            }
             while(!branch_jobs.isEmpty()){
                 var job = branch_jobs.poll();
                 ExploreGameTree(job.state_after_move.get(), job,depth+1);
@@ -69,8 +83,17 @@ public class BreadthFirst {
             HeuristicsQueue.FillWinner(parent.state_after_move.get(), parent.heuristic);
             parent.propagate();
             Debug.RunVerboseL1DebugCode(()->{
-                System.out.printf("Terminal state found\npoints: %.3f\n",parent.heuristic.winner.get());
+                System.out.printf("Terminal state found\npoints: %.3f\n",parent.heuristic.winner);
             });
         }
     }
+
+    // links nodes under parent and leaves their evaluation to HeuristicsQueue, which is also where an interrupted expansion's siblings go
+    private static void Enqueue(GameTreeNode parent, ArrayList<GameTreeNode> nodes){
+        parent.adopt_all(nodes);
+        for(GameTreeNode node : nodes){
+            HeuristicsQueue.add(node);
+            GameTree.put(node);
+        }
+    }
 }
@@ -3,108 +3,228 @@ package algorithms.search;
 import algorithms.analysis.HeuristicsQueue;
 import data.structures.GameState;
 import data.structures.GameTree;
+import data.structures.GameTreeEvictor;
 import data.structures.GameTreeNode;
+import data.structures.MovePool;
 import data.*;
 import tools.Debug;
-import tools.Maths;
 import tools.RandomGen;
 import tools.Tuner;
-import ubc.cosc322.AICore;
 
-import java.util.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * MonteCarlo runs UCT: each iteration selects down the tree by UCB1, expands one new child, evaluates it, and backs the
+ * result up the path it took. Children are expanded lazily using progressive widening, a node only gets another child
+ * once it has been visited enough (see Tuner.widening_c/widening_exp), so the cost of a node no longer depends on how
+ * many legal moves it has. New nodes are scored by random playouts to the end of the game.
+ */
 public class MonteCarlo {
+    // move generation finishes with the buffer before anything else uses it, so one buffer per thread is enough
+    private static final ThreadLocal<int[]> move_buffer = ThreadLocal.withInitial(MoveCompiler::NewMoveBuffer);
+    private static final ThreadLocal<int[]> region_moves = ThreadLocal.withInitial(() -> new int[2]);
+    private static final ThreadLocal<GameTreeNode[]> path_buffer = ThreadLocal.withInitial(() -> new GameTreeNode[Tuner.state_size + 1]);
 
     public static boolean RunSimulation(GameState board, GameTreeNode sim_root, boolean breadth_first) {
+        return RunSimulation(board, sim_root, breadth_first, true);
+    }
+
+    /* `shared` says whether sim_root belongs to the shared game tree, which other threads search at the same time.
+     * Shared searches use virtual loss and merge transpositions through GameTree, private (root parallel) searches do neither.
+     * */
+    public static boolean RunSimulation(GameState board, GameTreeNode sim_root, boolean breadth_first, boolean shared) {
         RandomGen rng = new RandomGen();
-        RunSimulation(rng, board, sim_root, breadth_first, new LinkedList<>(), Tuner.montecarlo_breadth_top, true);
+        boolean virtual_loss = shared && Tuner.use_virtual_loss;
+        // the breadth first searcher explores more, the depth first searcher trusts the statistics more
+        double exploration = breadth_first ? Tuner.uct_exploration_wide : Tuner.uct_exploration;
+        RegionSolver.Prepare(board);
+        for (int i = 0; i < Tuner.montecarlo_batch && board.CanGameContinue(); ++i) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            RunIteration(rng, sim_root, exploration, shared, virtual_loss);
+        }
         return !Thread.interrupted(); //Assuming execution was interrupted then we need to clear that flag, and restart from the current LocalState
     }
 
-    private static void RunSimulation(RandomGen rng, GameState board, GameTreeNode parent, boolean breadth_first, Deque<GameTreeNode> simulation_queue, int branches, boolean simulate) {
-        assert simulation_queue != null;
-        System.out.printf("%d\n", board.GetMoveNumber());
-        if (board.CanGameContinue() && !Thread.currentThread().isInterrupted()) {
-            int round = AICore.GetCurrentMoveNumber();
-            branches = (int)Maths.lerp(Tuner.montecarlo_breadth_top, Tuner.montecarlo_breadth_bottom, Math.min(1, (board.GetMoveNumber() - round) / (92.0 - round)));
-            TreeSet<GameTreeNode> candidates = new TreeSet<>(new GameTreeNode.NodeComparator());
-            policy_type policy_type = rng.get_random_policy(board.GetMoveNumber());
-            ArrayList<Move> moves = MoveCompiler.GetMoveList(board, board.GetTurnPieces(), true);
-            if (moves == null || moves.isEmpty()) {
-                Debug.RunVerboseL2DebugCode(()->{
-                    System.out.printf("player %d no moves state:\n", board.GetPlayerTurn());
-                    board.DebugPrint();
-                });
-                return;
+    private static void RunIteration(RandomGen rng, GameTreeNode root, double exploration, boolean shared, boolean virtual_loss) {
+        GameTreeNode[] path = path_buffer.get();
+        int depth = 0;
+        GameTreeNode node = root;
+        path[depth++] = node;
+        if (virtual_loss) {
+            node.add_virtual_loss();
+        }
+        while (true) {
+            GameState board = node.state_after_move.get();
+            if (!board.CanGameContinue()) {
+                HeuristicsQueue.FillWinner(board, node.heuristic);
+                node.propagate();
+                final GameTreeNode terminal = node;
+                Debug.RunVerboseL1DebugCode(() -> System.out.printf("Terminal state found\npoints: %.3f\n", terminal.heuristic.winner));
+                break;
             }
-            for (int i = 0; i < moves.size(); ++i) {
-                if (Thread.currentThread().isInterrupted()) {
-                    return;
-                }
-                GameState copy = new GameState(board);
-                Move move = moves.get(i);
-                if (copy.MakeMove(move, true, false)) {
-                    GameTreeNode node = GameTree.get(copy);
-                    if (node == null) {
-                        node = new GameTreeNode(move, parent, copy);
-                        parent.adopt(node);
-                        GameTree.put(node);
-                        HeuristicsQueue.add(node);
-                    }
-                    if (!Tuner.use_heuristic_queue && !node.heuristic.is_ready.get()){
-                        HeuristicsQueue.CalculateHeuristicsAll(copy, node, false);
-                    } else {
-                        switch (policy_type) {
-                            case REDUCTION:
-                                HeuristicsQueue.FillReduction(copy, node.heuristic);
-                                break;
-                            case FREEDOM:
-                                HeuristicsQueue.FillFreedom(copy, node.heuristic);
-                                break;
-                            case TERRITORY:
-                                HeuristicsQueue.FillTerritory(copy, node.heuristic);
-                                break;
-                            case AMAZONGS:
-                                HeuristicsQueue.FillAmazongs(copy, node.heuristic);
-                                break;
-                        }
-                    }
-                    candidates.add(node);
+            GameTreeNode child = null;
+            if (ShouldExpand(node) && !GameTreeEvictor.IsOverBudget()) {
+                child = Expand(rng, node, shared);
+            }
+            if (child != null) {
+                path[depth++] = child;
+                if (virtual_loss) {
+                    child.add_virtual_loss();
                 }
+                node = child;
+                break; // new nodes are evaluated straight away
+            }
+            child = Select(node, exploration);
+            if (child == null) {
+                break;
+            }
+            path[depth++] = child;
+            if (virtual_loss) {
+                child.add_virtual_loss();
+            }
+            node = child;
+        }
+        double result = Evaluate(rng, node.state_after_move.get());
+        // walk back up, every level belongs to the other player
+        for (int i = depth - 1; i >= 0; --i) {
+            if (virtual_loss) {
+                path[i].add_virtual_result(result);
+            } else {
+                path[i].add_result(result);
+            }
+            path[i] = null;
+            result = 1 - result;
+        }
+    }
+
+    // progressive widening: allow ceil(c * visits^exp) children
+    private static boolean ShouldExpand(GameTreeNode node) {
+        if (!node.has_untried_moves()) {
+            return false;
+        }
+        double allowed = Math.ceil(Tuner.widening_c * Math.pow(node.visits() + 1, Tuner.widening_exp));
+        return node.expanded() < allowed;
+    }
+
+    private static GameTreeNode Expand(RandomGen rng, GameTreeNode node, boolean shared) {
+        GameState board = node.state_after_move.get();
+        if (node.needs_untried_moves()) {
+            int[] buffer = move_buffer.get();
+            int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+            int[] moves = new int[count];
+            System.arraycopy(buffer, 0, moves, 0, count);
+            // shuffled, so widening doesn't favour whichever piece the move compiler happened to scan first
+            for (int i = count - 1; i > 0; --i) {
+                int j = rng.nextInt(i + 1);
+                int temp = moves[i];
+                moves[i] = moves[j];
+                moves[j] = temp;
+            }
+            node.set_untried_moves(moves);
+        }
+        int packed = node.next_untried_move();
+        if (packed < 0) {
+            return null;
+        }
+        Move move = MovePool.get(packed);
+        GameState copy = new GameState(board);
+        if (!copy.MakeMove(move, true, false)) {
+            return null;
+        }
+        if (!shared) {
+            return new GameTreeNode(move, node, copy);
+        }
+        GameTreeNode child = GameTree.get(copy);
+        if (child == null) {
+            child = new GameTreeNode(move, node, copy);
+            GameTree.put(child);
+        } else {
+            // this position has been reached through another line, so the branches merge
+            node.adopt(child, packed);
+        }
+        return child;
+    }
+
+    // UCB1 over the node's children, unvisited children go first
+    private static GameTreeNode Select(GameTreeNode node, double exploration) {
+        GameTreeNode best = null;
+        double best_score = Double.NEGATIVE_INFINITY;
+        double log_n = Math.log(Math.max(1, node.visits()));
+        for (int i = 0; ; ++i) {
+            GameTreeNode child = node.try_get(i);
+            if (child == null) {
+                break;
+            }
+            int n = child.visits();
+            if (n == 0) {
+                return child;
             }
-            //candidate list is built
+            double score = child.mean_reward() + exploration * Math.sqrt(log_n / n);
+            if (score > best_score) {
+                best_score = score;
+                best = child;
+            }
+        }
+        return best;
+    }
 
-            int b = 0;
-            // add the best X positions to the simulation queue
-            for (GameTreeNode node : candidates.descendingSet()) {
-                if(b++ >= branches || Thread.currentThread().isInterrupted()){
+    /* Returns the value of `board` for the player that just moved, in [0,1].
+     * A side with no moves has lost, walled off queens are solved exactly (see RegionSolver),
+     * otherwise we average the results of playing the game out (see Playout).
+     * */
+    public static double Evaluate(RandomGen rng, GameState board) {
+        if (!board.CanGameContinue()) {
+            return 1;
+        }
+        int arrows = Long.bitCount(board.GetPlayerOccupied(3, 0)) + Long.bitCount(board.GetPlayerOccupied(3, 1));
+        if (arrows >= Tuner.region_solver_min_arrows) {
+            int[] moves = region_moves.get();
+            if (RegionSolver.Solve(board, moves, Tuner.region_solver_search_budget)) {
+                // the player to move goes first, so they need strictly more moves to win
+                return moves[board.GetPlayerTurn() - 1] > moves[board.GetNextPlayerTurn() - 1] ? 0 : 1;
+            }
+        }
+        double wins = 0;
+        for (int i = 0; i < Tuner.playouts_per_leaf; ++i) {
+            wins += Playout.Run(rng, board);
+        }
+        return wins / Tuner.playouts_per_leaf;
+    }
+
+    /* Combines the root statistics of independent (root parallel) searches of the same position.
+     * Returns the packed move with the most visits summed over every root, or -1 if no root has a visited child.
+     * */
+    public static int MergeRoots(List<GameTreeNode> roots) {
+        Map<Integer, double[]> totals = new HashMap<>(); // packed move -> {visits, reward}
+        for (GameTreeNode root : roots) {
+            for (int i = 0; ; ++i) {
+                GameTreeNode child = root.try_get(i);
+                if (child == null) {
                     break;
                 }
-                if(breadth_first) {
-                    // add to the back
-                    simulation_queue.add(node);
-                } else {
-                    // add to the front
-                    simulation_queue.push(node);
+                int n = child.visits();
+                if (n == 0) {
+                    continue;
                 }
+                double[] total = totals.computeIfAbsent(child.move.get().Packed(), k -> new double[2]);
+                total[0] += n;
+                total[1] += child.mean_reward() * n;
             }
-            if(simulate) {
-                while(!simulation_queue.isEmpty()){
-                    // read from the front -> back
-                    GameTreeNode node = simulation_queue.poll();
-                    if(!Tuner.use_heuristic_queue){
-                        HeuristicsQueue.CalculateHeuristicsAll(node.state_after_move.get(), node, false);
-                    }
-                    RunSimulation(rng, node.state_after_move.get(), node, breadth_first, simulation_queue, branches, false);
-                }
+        }
+        int best_move = -1;
+        double[] best = null;
+        for (Map.Entry<Integer, double[]> entry : totals.entrySet()) {
+            double[] total = entry.getValue();
+            if (best == null || total[0] > best[0] || (total[0] == best[0] && total[1] > best[1])) {
+                best = total;
+                best_move = entry.getKey();
             }
-        } else if (!board.CanGameContinue()) {
-            HeuristicsQueue.FillWinner(parent.state_after_move.get(), parent.heuristic);
-            parent.propagate();
-            Debug.RunVerboseL1DebugCode(()->{
-                System.out.printf("Terminal state found\npoints: %.3f\n",parent.heuristic.winner.get());
-            });
         }
+        return best_move;
     }
 
     public enum policy_type {
@@ -6,9 +6,13 @@ import data.structures.MovePool;
 import tools.Tuner;
 
 import java.util.*;
-import java.util.function.*;
 
 public class MoveCompiler {
+    // a piece can reach at most `max_reach` tiles, and shoot at most `max_reach` tiles from each
+    public static final int max_moves_per_piece = RayTable.max_reach * RayTable.max_reach;
+    public static final int max_moves = 4 * max_moves_per_piece;
+    private static final ThreadLocal<int[]> list_buffer = ThreadLocal.withInitial(MoveCompiler::NewMoveBuffer);
+
     // To find all of one player's move options you calculate `pieces x positions x arrows` = 4*40*40 = 6400 max options/operations
     public static ArrayList<Move> GetMoveList(GameState board, BoardPiece[] player_pieces, boolean use_pooling){
         return GetMoveList(board,player_pieces,use_pooling,true);
@@ -27,51 +31,103 @@ public class MoveCompiler {
     }
 
     public static ArrayList<Move> GetMoveList(GameState board, int[] piece_indices, boolean use_pooling, boolean use_interrupts){
-        ArrayList<Move> all_moves = new ArrayList<>(5000);
-        // Getting the available positions for a piece to move to
-        int [][] open_piece_positions = GetOpenPositions(board,piece_indices,use_interrupts); //values of -1 are invalid elements, to be ignored
+        int[] buffer = piece_indices.length <= 4 ? list_buffer.get() : new int[piece_indices.length * max_moves_per_piece];
+        int count = GetMoves(board, piece_indices, buffer);
         if(use_interrupts && Thread.currentThread().isInterrupted()) {
-            return null; // there are no moves to return yet
-        }
-        for(int piece_i = 0; piece_i < piece_indices.length; ++piece_i){
-            // Getting the available positions for an arrow from all the positions a piece could shoot from
-            GameState copy = new GameState(board);
-            copy.SetTile(piece_indices[piece_i],0);
-            int[][] all_arrow_positions = GetOpenPositions(copy,open_piece_positions[piece_i],use_interrupts);
-            if(use_interrupts && Thread.currentThread().isInterrupted()){
-                return null; // there are no moves to return yet
+            return null; // the caller is not going to be doing anything with the moves anyway
+        }
+        ArrayList<Move> all_moves = new ArrayList<>(count);
+        for(int i = 0; i < count; ++i){
+            int packed = buffer[i];
+            if(use_pooling) {
+                all_moves.add(MovePool.get(packed));
+            } else {
+                all_moves.add(new Move(packed));
             }
-            //Time to construct Moves
-            //but first, check that the open positions for this piece isn't null/empty
-            if(open_piece_positions[piece_i] != null) {
-                //start iterating position/arrow combinations
-                for (int position_j = 0; position_j < open_piece_positions[piece_i].length; ++position_j) {
-                    if(open_piece_positions[piece_i][position_j] < 0){
-                        break;
-                    }
-                    for (int arrow_k = 0; arrow_k < all_arrow_positions[position_j].length; ++arrow_k) {
-                        if(all_arrow_positions[position_j][arrow_k] < 0){
+        }
+        return all_moves;
+    }
+
+    public static int[] NewMoveBuffer(){
+        return new int[max_moves];
+    }
+
+    public static int GetMoves(GameState board, BoardPiece[] player_pieces, int[] buffer){
+        int count = 0;
+        for (BoardPiece piece : player_pieces) {
+            count = GetMoves(board.GetOccupied(0), board.GetOccupied(1), piece.CalculateIndex(), buffer, count);
+        }
+        return count;
+    }
+
+    public static int GetMoves(GameState board, int[] piece_indices, int[] buffer){
+        int count = 0;
+        for (int index : piece_indices) {
+            if (index < 0) {
+                break; // -1 marks the end of valid values
+            }
+            count = GetMoves(board.GetOccupied(0), board.GetOccupied(1), index, buffer, count);
+        }
+        return count;
+    }
+
+    /* Writes every move for the piece on `start` into `buffer` (packed, see Move.Pack) beginning at `offset`.
+     * Returns the new end of the written data. The piece's own tile is treated as empty for the arrow scan,
+     * so no copy of the board is needed.
+     * */
+    public static int GetMoves(long occupied_lo, long occupied_hi, int start, int[] buffer, int offset){
+        if(start < 64){
+            occupied_lo &= ~(1L << start);
+        } else {
+            occupied_hi &= ~(1L << (start - 64));
+        }
+        for (int d = 0; d < RayTable.directions; ++d) {
+            for (int next : RayTable.GetRay(start, d)) {
+                if (RayTable.IsOccupied(occupied_lo, occupied_hi, next)) {
+                    break;
+                }
+                long next_lo = next < 64 ? occupied_lo | (1L << next) : occupied_lo;
+                long next_hi = next < 64 ? occupied_hi : occupied_hi | (1L << (next - 64));
+                for (int ad = 0; ad < RayTable.directions; ++ad) {
+                    for (int arrow : RayTable.GetRay(next, ad)) {
+                        if (RayTable.IsOccupied(next_lo, next_hi, arrow)) {
                             break;
                         }
-                        if(use_interrupts && Thread.currentThread().isInterrupted()){
-                            return null; // the caller is not going to be doing anything with the moves anyway
-                        }
-                        //check that the arrow array for this position isn't null/empty
-                        if (all_arrow_positions[position_j] != null) {
-                            int start = piece_indices[piece_i];
-                            int next = open_piece_positions[piece_i][position_j];
-                            int arrow = all_arrow_positions[position_j][arrow_k];
-                            if(use_pooling) {
-                                all_moves.add(MovePool.get(start, next, arrow));
-                            } else {
-                                all_moves.add(new Move(piece_indices[piece_i], open_piece_positions[piece_i][position_j], all_arrow_positions[position_j][arrow_k]));
-                            }
-                        }
+                        buffer[offset++] = Move.Pack(start, next, arrow);
                     }
                 }
             }
         }
-        return all_moves;
+        return offset;
+    }
+
+    public static int CountMoves(GameState board, BoardPiece[] player_pieces){
+        int count = 0;
+        for (BoardPiece piece : player_pieces) {
+            count += CountMoves(board.GetOccupied(0), board.GetOccupied(1), piece.CalculateIndex());
+        }
+        return count;
+    }
+
+    // same traversal as GetMoves, but only counts the moves
+    public static int CountMoves(long occupied_lo, long occupied_hi, int start){
+        if(start < 64){
+            occupied_lo &= ~(1L << start);
+        } else {
+            occupied_hi &= ~(1L << (start - 64));
+        }
+        int count = 0;
+        for (int d = 0; d < RayTable.directions; ++d) {
+            for (int next : RayTable.GetRay(start, d)) {
+                if (RayTable.IsOccupied(occupied_lo, occupied_hi, next)) {
+                    break;
+                }
+                long next_lo = next < 64 ? occupied_lo | (1L << next) : occupied_lo;
+                long next_hi = next < 64 ? occupied_hi : occupied_hi | (1L << (next - 64));
+                count += RayTable.Count(next_lo, next_hi, next);
+            }
+        }
+        return count;
     }
 
     //40 bottom level operations for every starting position.
@@ -82,7 +138,7 @@ public class MoveCompiler {
                 if (starting_positions[i] < 0 || (use_interrupts && Thread.currentThread().isInterrupted())){
                     break; // -1 marks the end of valid values
                 }
-                open_positions[i] = ScanAllDirections(board, starting_positions[i],use_interrupts);
+                open_positions[i] = ScanAllDirections(board, starting_positions[i]);
             }
             // all the null arrays are at the end of our array [of arrays]
             return open_positions;
@@ -92,52 +148,14 @@ public class MoveCompiler {
     }
 
     //this will always be faster than a parallel version for the board size we have
-    public static int[] ScanAllDirections(GameState board, int index, boolean use_interrupts){
-        int[] moves = new int[40];
-        Position pos = new Position(index); //JVM should optimize this to be in the stack memory
-
-        int starting_index = 0;
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,-1,0,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,1,0,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,0,1,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,0,-1,use_interrupts);
-
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,1,1,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,-1,-1,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,1,-1,use_interrupts);
-        starting_index = ScanDirection(moves,starting_index,board,pos.x,pos.y,-1,1,use_interrupts);
-        if(starting_index < 40){
-            moves[starting_index] = -1; //consider this to be null termination of the array
-        }
-
+    //one scan is too short to be worth interrupting, GetOpenPositions checks between pieces
+    public static int[] ScanAllDirections(GameState board, int index){
+        int[] moves = new int[RayTable.max_reach + 1];
+        int end = RayTable.Scan(board, index, moves, 0);
+        moves[end] = -1; //consider this to be null termination of the array
         return moves;
     }
 
-    //this has been optimized to death
-    public static int ScanDirection(int[] moves, int start_index, GameState board, int x, int y, int xi, int yi, boolean use_interrupts){
-        if(use_interrupts && Thread.currentThread().isInterrupted()){
-            return 0;
-        }
-
-        x += xi;
-        y += yi;
-        int i = start_index;
-        Function<Integer, Boolean> check_in_range = (v) -> (v <= Tuner.coord_max && v >= Tuner.coord_min); //JVM should inline this =)
-        while(check_in_range.apply(x) && check_in_range.apply(y)){
-            if(use_interrupts && Thread.currentThread().isInterrupted()){
-                break;
-            }
-            int index = Position.CalculateIndex(x,y);
-            if(board.ReadTile(index) != 0){
-                break;
-            }
-            moves[i++] = index;
-            x += xi;
-            y += yi;
-        }
-        return i;
-    }
-
     public static Position[] GetNeighbours(int index){
         if(index >= 0 && index < Tuner.state_size) {
             Position[] neighbours = new Position[8];
@@ -0,0 +1,122 @@
+package algorithms.search;
+
+import data.structures.GameState;
+import tools.RandomGen;
+import tools.Tuner;
+
+/**
+ * Playout plays a position out to the end of the game and reports who won.
+ * The game is played on occupancy words copied out of the GameState, with scratch arrays kept per thread, so a playout
+ * allocates nothing. Each move picks a random queen that can move and a random tile to move to, then the arrow is
+ * epsilon-greedy: most of the time it is fired next to an enemy queen if it can be (Tuner.playout_epsilon is the chance
+ * of a purely random arrow).
+ * Moves are never listed, RayTable.Reach counts the tiles in each direction and the chosen one is stepped to directly.
+ */
+public class Playout {
+    private static class Scratch {
+        final int[] queens = new int[8]; // [0,3] belong to player 1, [4,7] to player 2
+        final int[] reach = new int[RayTable.directions];
+        final int[] tiles = new int[RayTable.max_reach];
+        long occupied_lo;
+        long occupied_hi;
+    }
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /* Returns 1 if the player that made the last move on `board` wins the playout, 0 otherwise.
+     * (the same perspective MonteCarlo uses for node rewards)
+     * */
+    public static double Run(RandomGen rng, GameState board) {
+        Scratch s = scratch.get();
+        s.occupied_lo = board.GetOccupied(0);
+        s.occupied_hi = board.GetOccupied(1);
+        board.GetQueenTiles(s.queens);
+        final int last_mover = board.GetNextPlayerTurn();
+        int turn = board.GetPlayerTurn();
+        while (PlayMove(s, rng, turn == 1 ? 0 : 4, turn == 1 ? 4 : 0)) {
+            turn = 3 - turn;
+        }
+        // `turn` couldn't move, so they lost
+        return turn != last_mover ? 1 : 0;
+    }
+
+    // plays one move for the queens at [ours, ours+4), returns false if none of them can move
+    private static boolean PlayMove(Scratch s, RandomGen rng, int ours, int theirs) {
+        int first = rng.nextInt(4);
+        for (int q = 0; q < 4; ++q) {
+            int queen = ours + ((first + q) & 3);
+            int start = s.queens[queen];
+            if (start < 0) {
+                continue;
+            }
+            int count = RayTable.Reach(s.occupied_lo, s.occupied_hi, start, s.reach);
+            if (count == 0) {
+                continue;
+            }
+            int next = Pick(s.reach, start, rng.nextInt(count));
+            Toggle(s, start);
+            Toggle(s, next);
+            s.queens[queen] = next;
+            // the queen just left its start tile, so there is always somewhere to shoot
+            count = RayTable.Reach(s.occupied_lo, s.occupied_hi, next, s.reach);
+            int arrow = -1;
+            if (rng.nextDouble() >= Tuner.playout_epsilon) {
+                arrow = PickAdjacentTo(s, rng, theirs, next);
+            }
+            if (arrow < 0) {
+                arrow = Pick(s.reach, next, rng.nextInt(count));
+            }
+            Toggle(s, arrow);
+            return true;
+        }
+        return false;
+    }
+
+    // returns the k-th (from 0) tile reachable from `tile`, going through the directions in order
+    private static int Pick(int[] reach, int tile, int k) {
+        for (int d = 0; d < RayTable.directions; ++d) {
+            if (k < reach[d]) {
+                return tile + (k + 1) * RayTable.GetStep(d);
+            }
+            k -= reach[d];
+        }
+        throw new IllegalStateException("no reachable tile left to pick");
+    }
+
+    // returns a random arrow tile next to an enemy queen that `from` can reach with s.reach, -1 if there isn't one
+    private static int PickAdjacentTo(Scratch s, RandomGen rng, int theirs, int from) {
+        long lo = 0;
+        long hi = 0;
+        for (int i = theirs; i < theirs + 4; ++i) {
+            if (s.queens[i] >= 0) {
+                lo |= RayTable.GetNeighbours(s.queens[i], 0);
+                hi |= RayTable.GetNeighbours(s.queens[i], 1);
+            }
+        }
+        lo &= ~s.occupied_lo;
+        hi &= ~s.occupied_hi;
+        int kept = 0;
+        for (; lo != 0; lo &= lo - 1) {
+            kept = KeepIfReachable(s, from, Long.numberOfTrailingZeros(lo), kept);
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            kept = KeepIfReachable(s, from, 64 + Long.numberOfTrailingZeros(hi), kept);
+        }
+        return kept > 0 ? s.tiles[rng.nextInt(kept)] : -1;
+    }
+
+    private static int KeepIfReachable(Scratch s, int from, int tile, int kept) {
+        int d = RayTable.GetDirection(from, tile);
+        if (d >= 0 && RayTable.GetDistance(from, tile) <= s.reach[d]) {
+            s.tiles[kept++] = tile;
+        }
+        return kept;
+    }
+
+    private static void Toggle(Scratch s, int tile) {
+        if (tile < 64) {
+            s.occupied_lo ^= 1L << tile;
+        } else {
+            s.occupied_hi ^= 1L << (tile - 64);
+        }
+    }
+}
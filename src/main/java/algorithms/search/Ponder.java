@@ -0,0 +1,66 @@
+package algorithms.search;
+
+import data.structures.GameTreeNode;
+import tools.RandomGen;
+import tools.Tuner;
+
+/**
+ * Ponder picks where the search works while the opponent thinks.
+ * The root is then the position after our move, and its children are the opponent's replies. Instead of spending every
+ * iteration choosing between the replies, each batch of iterations searches below one of the most visited replies
+ * (Tuner.ponder_replies of them), picked in proportion to their visits. The rest of the batches (Tuner.ponder_root_share)
+ * still search from the root, so replies we haven't rated highly yet keep being tried. When the opponent's move
+ * arrives, its node is promoted to the root (see GameTreeReclaimer) with the pondered search already below it.
+ */
+public class Ponder {
+    private static final ThreadLocal<GameTreeNode[]> top_buffer = ThreadLocal.withInitial(() -> new GameTreeNode[Math.max(1, Tuner.ponder_replies)]);
+
+    // returns the node the next batch should search from, `root` or one of its most visited children
+    public static GameTreeNode PickRoot(RandomGen rng, GameTreeNode root) {
+        if (rng.nextDouble() < Tuner.ponder_root_share) {
+            return root;
+        }
+        GameTreeNode[] top = top_buffer.get();
+        int count = MostVisited(root, top);
+        long total = 0;
+        for (int i = 0; i < count; ++i) {
+            total += top[i].visits();
+        }
+        if (total == 0) {
+            return root;
+        }
+        long pick = (long) (rng.nextDouble() * total);
+        GameTreeNode chosen = root;
+        for (int i = 0; i < count; ++i) {
+            pick -= top[i].visits();
+            if (pick < 0) {
+                chosen = top[i];
+                break;
+            }
+        }
+        return chosen.state_after_move.get().CanGameContinue() ? chosen : root;
+    }
+
+    // fills `top` with the root's most visited children, most visited first, and returns how many there are
+    static int MostVisited(GameTreeNode root, GameTreeNode[] top) {
+        int count = 0;
+        for (int i = 0; ; ++i) {
+            GameTreeNode child = root.try_get(i);
+            if (child == null) {
+                break;
+            }
+            int visits = child.visits();
+            if (visits == 0 || (count == top.length && visits <= top[count - 1].visits())) {
+                continue;
+            }
+            // insertion into the sorted few, the last one drops off when they're full
+            int j = count < top.length ? count++ : count - 1;
+            while (j > 0 && top[j - 1].visits() < visits) {
+                top[j] = top[j - 1];
+                --j;
+            }
+            top[j] = child;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,161 @@
+package algorithms.search;
+
+import data.Position;
+import data.structures.GameState;
+import tools.Tuner;
+
+import java.util.Arrays;
+
+/**
+ * RayTable holds, for every tile and every queen direction, the ordered list of tiles along that ray.
+ * The rays are built once when the class loads, so scanning only has to test each tile against an occupancy mask.
+ */
+public class RayTable {
+    // same order MoveCompiler has always scanned in, which keeps move lists in the same order
+    private static final int[] dx = {-1, 1, 0, 0, 1, -1, 1, -1};
+    private static final int[] dy = {0, 0, 1, -1, 1, -1, -1, 1};
+    public static final int directions = 8;
+    public static final int max_reach = 4 * (Tuner.coord_upper - 1); // the most tiles a queen could ever see
+    // rays[tile][direction] = tiles along the ray, nearest first
+    private static final int[][][] rays = new int[Tuner.state_size][directions][];
+    // king move neighbours of each tile as occupancy words
+    private static final long[] neighbours_lo = new long[Tuner.state_size];
+    private static final long[] neighbours_hi = new long[Tuner.state_size];
+    // the same rays as occupancy words and lengths, indexed [tile * directions + direction]
+    private static final long[] ray_lo = new long[Tuner.state_size * directions];
+    private static final long[] ray_hi = new long[Tuner.state_size * directions];
+    private static final int[] ray_length = new int[Tuner.state_size * directions];
+    // how far along a ray each tile is, and the ray it is on, indexed [from * state_size + to] (0 and -1 when off every ray)
+    private static final byte[] distance = new byte[Tuner.state_size * Tuner.state_size];
+    private static final byte[] direction = new byte[Tuner.state_size * Tuner.state_size];
+    // the index change of one step in each direction
+    private static final int[] step = new int[directions];
+
+    static {
+        Arrays.fill(direction, (byte) -1);
+        for (int d = 0; d < directions; ++d) {
+            step[d] = Position.CalculateIndex(dx[d], dy[d]);
+        }
+        int[] buffer = new int[Tuner.coord_upper];
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            Position pos = new Position(tile);
+            for (int d = 0; d < directions; ++d) {
+                int length = 0;
+                int x = pos.x + dx[d];
+                int y = pos.y + dy[d];
+                while (Position.IsValid(x, y)) {
+                    buffer[length++] = Position.CalculateIndex(x, y);
+                    x += dx[d];
+                    y += dy[d];
+                }
+                rays[tile][d] = new int[length];
+                System.arraycopy(buffer, 0, rays[tile][d], 0, length);
+                ray_length[tile * directions + d] = length;
+                for (int i = 0; i < length; ++i) {
+                    if (buffer[i] < 64) {
+                        ray_lo[tile * directions + d] |= 1L << buffer[i];
+                    } else {
+                        ray_hi[tile * directions + d] |= 1L << (buffer[i] - 64);
+                    }
+                    distance[tile * Tuner.state_size + buffer[i]] = (byte) (i + 1);
+                    direction[tile * Tuner.state_size + buffer[i]] = (byte) d;
+                }
+                if (length > 0) {
+                    if (buffer[0] < 64) {
+                        neighbours_lo[tile] |= 1L << buffer[0];
+                    } else {
+                        neighbours_hi[tile] |= 1L << (buffer[0] - 64);
+                    }
+                }
+            }
+        }
+    }
+
+    public static int[] GetRay(int tile, int direction) {
+        return rays[tile][direction];
+    }
+
+    public static long GetNeighbours(int tile, int word) {
+        return word == 0 ? neighbours_lo[tile] : neighbours_hi[tile];
+    }
+
+    // occupancy word 0 holds tiles [0,63], word 1 holds tiles [64,99] (see GameState.GetOccupied)
+    public static boolean IsOccupied(long occupied_lo, long occupied_hi, int tile) {
+        if (tile < 64) {
+            return (occupied_lo & (1L << tile)) != 0;
+        }
+        return (occupied_hi & (1L << (tile - 64))) != 0;
+    }
+
+    /* Writes every tile a queen on `tile` can reach into `out` starting at `offset`.
+     * Returns the new end of the written data (ie. offset + tiles found), nothing is allocated.
+     * */
+    public static int Scan(long occupied_lo, long occupied_hi, int tile, int[] out, int offset) {
+        final int[][] tile_rays = rays[tile];
+        for (int d = 0; d < directions; ++d) {
+            for (int next : tile_rays[d]) {
+                if (IsOccupied(occupied_lo, occupied_hi, next)) {
+                    break;
+                }
+                out[offset++] = next;
+            }
+        }
+        return offset;
+    }
+
+    public static int Scan(GameState board, int tile, int[] out, int offset) {
+        return Scan(board.GetOccupied(0), board.GetOccupied(1), tile, out, offset);
+    }
+
+    // counts the tiles a queen on `tile` can reach without writing them anywhere
+    public static int Count(long occupied_lo, long occupied_hi, int tile) {
+        final int[][] tile_rays = rays[tile];
+        int count = 0;
+        for (int d = 0; d < directions; ++d) {
+            for (int next : tile_rays[d]) {
+                if (IsOccupied(occupied_lo, occupied_hi, next)) {
+                    break;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /* Writes how many tiles a queen on `tile` can reach in each direction into `reach`, returns the total.
+     * Each ray is masked with the occupancy words and only the nearest blocker is looked up, so no tile is visited.
+     * The k-th reachable tile in direction d (k from 1) is tile + k * GetStep(d).
+     * */
+    public static int Reach(long occupied_lo, long occupied_hi, int tile, int[] reach) {
+        int total = 0;
+        for (int d = 0; d < directions; ++d) {
+            int r = tile * directions + d;
+            long lo = occupied_lo & ray_lo[r];
+            long hi = occupied_hi & ray_hi[r];
+            int blocker;
+            if (step[d] > 0) { // the nearest blocker has the lowest index
+                blocker = lo != 0 ? Long.numberOfTrailingZeros(lo) : hi != 0 ? 64 + Long.numberOfTrailingZeros(hi) : -1;
+            } else {
+                blocker = hi != 0 ? 127 - Long.numberOfLeadingZeros(hi) : lo != 0 ? 63 - Long.numberOfLeadingZeros(lo) : -1;
+            }
+            int n = blocker < 0 ? ray_length[r] : distance[tile * Tuner.state_size + blocker] - 1;
+            reach[d] = n;
+            total += n;
+        }
+        return total;
+    }
+
+    public static int GetStep(int direction) {
+        return step[direction];
+    }
+
+    // the direction `to` is in from `from`, -1 if they don't share a ray
+    public static int GetDirection(int from, int to) {
+        return direction[from * Tuner.state_size + to];
+    }
+
+    // how many steps `to` is from `from` along their shared ray, 0 if they don't share one
+    public static int GetDistance(int from, int to) {
+        return distance[from * Tuner.state_size + to];
+    }
+}
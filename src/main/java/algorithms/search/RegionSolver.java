@@ -0,0 +1,256 @@
+package algorithms.search;
+
+import data.structures.GameState;
+import data.structures.Zobrist;
+import tools.Tuner;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RegionSolver decides games where arrows have walled the queens off from each other.
+ * The board is flood filled into regions of tiles that aren't arrows. If no region holds queens of both players, neither
+ * player can affect the other any more, so each region is solved on its own for the most moves its queens can make, and
+ * the player to move wins only if they have more moves in total than their opponent.
+ * Region results are cached by a hash of the region's empty tiles and queens, so regions that survive from one position
+ * to the next are only solved once. Regions that ran out of budget are cached too, along with the budget they had, so
+ * searches don't keep paying for a region they can't solve. Searches solve the position they start from with the full
+ * budget (Prepare) and use a small one at their nodes, which mostly finds the root's regions and their successors cached.
+ */
+public class RegionSolver {
+    public static final int unknown = -1;
+    private static final long board_hi = (1L << (Tuner.state_size - 64)) - 1;
+    // each entry holds the region hash in the upper bits and the move count in the low 8 bits
+    private static final long value_mask = 0xFF;
+    private static final AtomicLongArray cache = new AtomicLongArray(Integer.highestOneBit(Tuner.region_cache_size));
+    private static final int cache_mask = cache.length() - 1;
+    // each entry holds the upper half of the region hash and the budget the region ran out of in the lower half
+    private static final AtomicLongArray failed = new AtomicLongArray(Integer.highestOneBit(Tuner.region_failed_cache_size));
+    private static final int failed_mask = failed.length() - 1;
+
+    private static class Scratch {
+        final int[] queens = new int[8];
+        final int[] region_queens = new int[4];
+        long region_lo;
+        long region_hi;
+        // every region found by the flood fill, with the player whose queens it holds
+        final long[] regions_lo = new long[8];
+        final long[] regions_hi = new long[8];
+        final int[] region_players = new int[8];
+        int nodes;
+        int budget;
+    }
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    // solves the position a search starts from with the full budget, so its regions are cached for the search's nodes
+    public static void Prepare(GameState board) {
+        int arrows = Long.bitCount(board.GetPlayerOccupied(3, 0)) + Long.bitCount(board.GetPlayerOccupied(3, 1));
+        if (arrows >= Tuner.region_solver_min_arrows) {
+            Solve(board, new int[2], Tuner.region_solver_budget);
+        }
+    }
+
+    public static boolean Solve(GameState board, int[] moves) {
+        return Solve(board, moves, Tuner.region_solver_budget);
+    }
+
+    public static boolean Solve(GameState board, int[] moves, int budget) {
+        int[] queens = scratch.get().queens;
+        board.GetQueenTiles(queens);
+        return Solve(board.GetOccupied(0), board.GetOccupied(1), queens, moves, budget);
+    }
+
+    /* Fills moves[0] and moves[1] with the most moves player 1 and player 2 can still make and returns true, or returns
+     * false if a region holds both players' queens (or a region was too big to solve within `budget` nodes).
+     * `queens` holds player 1's queens in [0,3] and player 2's in [4,7], missing queens are -1.
+     * Every region is flood filled before any is solved, so positions where the players still meet cost no search.
+     * */
+    public static boolean Solve(long occupied_lo, long occupied_hi, int[] queens, int[] moves, int budget) {
+        Scratch s = scratch.get();
+        long queens_lo = 0;
+        long queens_hi = 0;
+        for (int queen : queens) {
+            if (queen >= 0) {
+                if (queen < 64) {
+                    queens_lo |= 1L << queen;
+                } else {
+                    queens_hi |= 1L << (queen - 64);
+                }
+            }
+        }
+        long open_lo = ~occupied_lo | queens_lo;
+        long open_hi = (~occupied_hi | queens_hi) & board_hi;
+        long seen_lo = 0;
+        long seen_hi = 0;
+        int regions = 0;
+        for (int i = 0; i < queens.length; ++i) {
+            int queen = queens[i];
+            if (queen < 0 || RayTable.IsOccupied(seen_lo, seen_hi, queen)) {
+                continue;
+            }
+            FloodFill(s, open_lo, open_hi, queen);
+            seen_lo |= s.region_lo;
+            seen_hi |= s.region_hi;
+            for (int j = 0; j < queens.length; ++j) {
+                if (queens[j] >= 0 && (j < 4) != (i < 4) && RayTable.IsOccupied(s.region_lo, s.region_hi, queens[j])) {
+                    return false; // the players can still get in each other's way
+                }
+            }
+            s.regions_lo[regions] = s.region_lo;
+            s.regions_hi[regions] = s.region_hi;
+            s.region_players[regions++] = i < 4 ? 1 : 2;
+        }
+        moves[0] = 0;
+        moves[1] = 0;
+        s.budget = budget;
+        for (int r = 0; r < regions; ++r) {
+            s.region_lo = s.regions_lo[r];
+            s.region_hi = s.regions_hi[r];
+            int player = s.region_players[r];
+            int count = 0;
+            for (int j = player == 1 ? 0 : 4, end = j + 4; j < end; ++j) {
+                if (queens[j] >= 0 && RayTable.IsOccupied(s.region_lo, s.region_hi, queens[j])) {
+                    s.region_queens[count++] = queens[j];
+                }
+            }
+            int region_moves = MaxMoves(s, occupied_lo, occupied_hi, queens_lo, queens_hi, count, player);
+            if (region_moves == unknown) {
+                return false;
+            }
+            moves[player - 1] += region_moves;
+        }
+        return true;
+    }
+
+    // grows s.region outwards from `tile` through king moves over open tiles
+    private static void FloodFill(Scratch s, long open_lo, long open_hi, int tile) {
+        long region_lo = tile < 64 ? 1L << tile : 0;
+        long region_hi = tile < 64 ? 0 : 1L << (tile - 64);
+        long frontier_lo = region_lo;
+        long frontier_hi = region_hi;
+        while ((frontier_lo | frontier_hi) != 0) {
+            long next_lo = 0;
+            long next_hi = 0;
+            while (frontier_lo != 0) {
+                int t = Long.numberOfTrailingZeros(frontier_lo);
+                frontier_lo &= frontier_lo - 1;
+                next_lo |= RayTable.GetNeighbours(t, 0);
+                next_hi |= RayTable.GetNeighbours(t, 1);
+            }
+            while (frontier_hi != 0) {
+                int t = Long.numberOfTrailingZeros(frontier_hi) + 64;
+                frontier_hi &= frontier_hi - 1;
+                next_lo |= RayTable.GetNeighbours(t, 0);
+                next_hi |= RayTable.GetNeighbours(t, 1);
+            }
+            frontier_lo = next_lo & open_lo & ~region_lo;
+            frontier_hi = next_hi & open_hi & ~region_hi;
+            region_lo |= frontier_lo;
+            region_hi |= frontier_hi;
+        }
+        s.region_lo = region_lo;
+        s.region_hi = region_hi;
+    }
+
+    private static int MaxMoves(Scratch s, long occupied_lo, long occupied_hi, long queens_lo, long queens_hi, int count, int player) {
+        long empty_lo = s.region_lo & ~queens_lo;
+        long empty_hi = s.region_hi & ~queens_hi;
+        int empties = Long.bitCount(empty_lo) + Long.bitCount(empty_hi);
+        long hash = 0;
+        for (long lo = empty_lo; lo != 0; lo &= lo - 1) {
+            hash ^= Zobrist.TileKey(Long.numberOfTrailingZeros(lo), 3);
+        }
+        for (long hi = empty_hi; hi != 0; hi &= hi - 1) {
+            hash ^= Zobrist.TileKey(Long.numberOfTrailingZeros(hi) + 64, 3);
+        }
+        for (int i = 0; i < count; ++i) {
+            hash ^= Zobrist.TileKey(s.region_queens[i], player);
+        }
+        int cached = Probe(hash);
+        if (cached != unknown) {
+            return cached; // a bigger budget may have solved what a smaller one couldn't
+        }
+        long entry = failed.get((int) hash & failed_mask);
+        if ((entry & ~0xFFFFFFFFL) == (hash & ~0xFFFFFFFFL) && (int) entry >= s.budget) {
+            return unknown; // we've already failed this region with at least as much budget
+        }
+        s.nodes = 0;
+        int moves = MaxMoves(s, occupied_lo, occupied_hi, count, player, hash, empties);
+        if (moves == unknown) {
+            failed.set((int) hash & failed_mask, (hash & ~0xFFFFFFFFL) | s.budget);
+        }
+        return moves;
+    }
+
+    /* Depth first search for the longest sequence of moves the region's queens can make.
+     * Every move uses up one empty tile, so the search stops as soon as it finds a line that fills the region.
+     * The region hash marks empty tiles with the arrow key, and queens with their player's key.
+     * */
+    private static int MaxMoves(Scratch s, long occupied_lo, long occupied_hi, int count, int player, long hash, int empties) {
+        if (empties == 0) {
+            return 0;
+        }
+        int cached = Probe(hash);
+        if (cached != unknown) {
+            return cached;
+        }
+        if (++s.nodes > s.budget) {
+            return unknown;
+        }
+        int[] queens = s.region_queens;
+        int best = 0;
+        for (int q = 0; q < count; ++q) {
+            int start = queens[q];
+            long from_lo = start < 64 ? occupied_lo & ~(1L << start) : occupied_lo;
+            long from_hi = start < 64 ? occupied_hi : occupied_hi & ~(1L << (start - 64));
+            long start_hash = hash ^ Zobrist.TileKey(start, player) ^ Zobrist.TileKey(start, 3);
+            for (int d = 0; d < RayTable.directions; ++d) {
+                for (int next : RayTable.GetRay(start, d)) {
+                    if (RayTable.IsOccupied(from_lo, from_hi, next)) {
+                        break;
+                    }
+                    long next_lo = next < 64 ? from_lo | (1L << next) : from_lo;
+                    long next_hi = next < 64 ? from_hi : from_hi | (1L << (next - 64));
+                    long next_hash = start_hash ^ Zobrist.TileKey(next, 3) ^ Zobrist.TileKey(next, player);
+                    queens[q] = next;
+                    for (int ad = 0; ad < RayTable.directions; ++ad) {
+                        for (int arrow : RayTable.GetRay(next, ad)) {
+                            if (RayTable.IsOccupied(next_lo, next_hi, arrow)) {
+                                break;
+                            }
+                            long arrow_lo = arrow < 64 ? next_lo | (1L << arrow) : next_lo;
+                            long arrow_hi = arrow < 64 ? next_hi : next_hi | (1L << (arrow - 64));
+                            int result = MaxMoves(s, arrow_lo, arrow_hi, count, player, next_hash ^ Zobrist.TileKey(arrow, 3), empties - 1);
+                            if (result == unknown) {
+                                queens[q] = start;
+                                return unknown;
+                            }
+                            if (result + 1 > best) {
+                                best = result + 1;
+                                if (best == empties) {
+                                    queens[q] = start;
+                                    Store(hash, best);
+                                    return best;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            queens[q] = start;
+        }
+        Store(hash, best);
+        return best;
+    }
+
+    private static int Probe(long hash) {
+        long entry = cache.get((int) (hash >>> 8) & cache_mask);
+        if (entry != 0 && (entry & ~value_mask) == (hash & ~value_mask)) {
+            return (int) (entry & value_mask);
+        }
+        return unknown;
+    }
+
+    private static void Store(long hash, int moves) {
+        cache.set((int) (hash >>> 8) & cache_mask, (hash & ~value_mask) | moves);
+    }
+}
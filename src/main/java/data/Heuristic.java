@@ -1,32 +1,125 @@
 package data;
 
-import data.parallel.AtomicDouble;
-
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
+/**
+ * Heuristic holds a node's evaluation as plain fields, with the has_* flags packed into one bitmask.
+ * Each evaluation field has a single writer at a time (the thread evaluating the node), so they are only volatile.
+ * The flags, a parent's min/max over its children, and the aggregates (see data.structures.Backpropagation) are the
+ * fields several threads write at once, and those are updated by CAS through VarHandles.
+ */
 public class Heuristic {
-    public final AtomicDouble aggregate = new AtomicDouble();
-    public final AtomicDouble aggregate_avg = new AtomicDouble();
-    public final AtomicInteger aggregate_count = new AtomicInteger();
+    // flags, see has/set/claim
+    public static final int is_ready = 1;
+    public static final int has_propagated = 1 << 1;
+    public static final int has_aggregated = 1 << 2;
+    public static final int has_winner = 1 << 3;
+    public static final int has_amazongs = 1 << 4;
+    public static final int has_mobility = 1 << 5;
+    public static final int has_territory = 1 << 6;
+
+    private static final VarHandle FLAGS;
+    private static final VarHandle AGGREGATE;
+    private static final VarHandle AGGREGATE_COUNT;
+    private static final VarHandle MAXIMUM_SUB;
+    private static final VarHandle MINIMUM_SUB;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            FLAGS = lookup.findVarHandle(Heuristic.class, "flags", int.class);
+            AGGREGATE = lookup.findVarHandle(Heuristic.class, "aggregate", double.class);
+            AGGREGATE_COUNT = lookup.findVarHandle(Heuristic.class, "aggregate_count", int.class);
+            MAXIMUM_SUB = lookup.findVarHandle(Heuristic.class, "maximum_sub", double.class);
+            MINIMUM_SUB = lookup.findVarHandle(Heuristic.class, "minimum_sub", double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile int flags;
+
+    public volatile double aggregate;
+    public volatile double aggregate_avg;
+    public volatile int aggregate_count;
+
+    public volatile double value;
+    public volatile double maximum_sub;
+    public volatile double minimum_sub;
+
+    public volatile double winner;
+    public volatile double amazongs;
+    public volatile double mobility;
+    public volatile double territory;
+
+    public boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public void set(int flag) {
+        claim(flag);
+    }
+
+    // sets `flag`, returns true only for the caller that changed it
+    public boolean claim(int flag) {
+        int current;
+        do {
+            current = flags;
+            if ((current & flag) != 0) {
+                return false;
+            }
+        } while (!FLAGS.compareAndSet(this, current, current | flag));
+        return true;
+    }
 
-    public final AtomicDouble value = new AtomicDouble();
-    public final AtomicDouble maximum_sub = new AtomicDouble();
-    public final AtomicDouble minimum_sub = new AtomicDouble();
+    public double add_aggregate(double delta) {
+        double current;
+        do {
+            current = aggregate;
+        } while (!AGGREGATE.compareAndSet(this, current, current + delta));
+        return current + delta;
+    }
 
-    public final AtomicDouble winner = new AtomicDouble();
-    public final AtomicDouble amazongs = new AtomicDouble();
-    public final AtomicDouble mobility = new AtomicDouble();
-    public final AtomicDouble territory = new AtomicDouble();
+    // adds `delta` without letting the aggregate go below 0, returns how much it actually changed
+    public double add_aggregate_clamped(double delta) {
+        double current;
+        double next;
+        do {
+            current = aggregate;
+            next = Math.max(current + delta, 0);
+        } while (!AGGREGATE.compareAndSet(this, current, next));
+        return next - current;
+    }
 
-    public final AtomicBoolean is_ready = new AtomicBoolean(false);
-    public final AtomicBoolean has_propagated = new AtomicBoolean(false);
-    public final AtomicBoolean has_aggregated = new AtomicBoolean(false);
-    public final AtomicBoolean has_winner = new AtomicBoolean(false);
-    public final AtomicBoolean has_amazongs = new AtomicBoolean(false);
-    public final AtomicBoolean has_mobility = new AtomicBoolean(false);
-    public final AtomicBoolean has_territory = new AtomicBoolean(false);
+    public int increment_aggregate_count() {
+        return add_aggregate_count(1);
+    }
 
+    public int add_aggregate_count(int delta) {
+        return (int) AGGREGATE_COUNT.getAndAdd(this, delta) + delta;
+    }
+
+    // raises maximum_sub to `h` if it is higher, children propagate into their parents concurrently
+    public void raise_maximum_sub(double h) {
+        double current;
+        do {
+            current = maximum_sub;
+            if (current >= h) {
+                return;
+            }
+        } while (!MAXIMUM_SUB.compareAndSet(this, current, h));
+    }
+
+    public void lower_minimum_sub(double h) {
+        double current;
+        do {
+            current = minimum_sub;
+            if (current <= h) {
+                return;
+            }
+        } while (!MINIMUM_SUB.compareAndSet(this, current, h));
+    }
 
     @Override
     public String toString() {
@@ -34,6 +127,6 @@ public class Heuristic {
                 "aggregate count: %d\naggregate: %.4f\n" +
                 "amazongs: %.4f\nwinning: %.4f\n" +
                 "mobility: %.4f\nterritory: %.4f\n",
-                value.get(), aggregate_avg.get(), aggregate_count.get(), aggregate.get(), amazongs.get(), winner.get(), mobility.get(), territory.get());
+                value, aggregate_avg, aggregate_count, aggregate, amazongs, winner, mobility, territory);
     }
 }
@@ -3,6 +3,11 @@ package data;
 import data.structures.GameState;
 
 public class Move {
+    // moves can be packed into a single int, 7 bits per index: [start | next | arrow]
+    public static final int index_bits = 7;
+    private static final int index_mask = (1 << index_bits) - 1;
+    public static final int packed_bits = 3 * index_bits;
+
     public int start = -1;
     public int next = -1;
     public int arrow = -1;
@@ -12,6 +17,27 @@ public class Move {
         this.next = next;
         this.arrow = arrow;
     }
+    public Move(int packed){
+        this(Start(packed), Next(packed), Arrow(packed));
+    }
+
+    public int Packed(){
+        return Pack(start, next, arrow);
+    }
+
+    public static int Pack(int start, int next, int arrow){
+        return (start << (index_bits << 1)) | (next << index_bits) | arrow;
+    }
+    public static int Start(int packed){
+        return packed >>> (index_bits << 1);
+    }
+    public static int Next(int packed){
+        return (packed >>> index_bits) & index_mask;
+    }
+    public static int Arrow(int packed){
+        return packed & index_mask;
+    }
+
     public boolean IsValidFor(GameState state){
         if(!(start < 0)) {
             int start_pos = state.ReadTile(start);
@@ -1,27 +1,107 @@
 package data.parallel;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
+/**
+ * AtomicDouble is a double updated lock-free by a compare-and-set loop through a VarHandle.
+ * compareAndSet compares bit patterns (like Double.doubleToRawLongBits), so 0.0 and -0.0 differ and a NaN matches itself.
+ */
 public class AtomicDouble {
-    private AtomicLong value = new AtomicLong(Double.doubleToLongBits(0.0));
-    private volatile double cached = 0.0;
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(AtomicDouble.class, "value", double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile double value;
+
+    public AtomicDouble() {
+        this(0.0);
+    }
+
+    public AtomicDouble(double initial_value) {
+        value = initial_value;
+    }
+
     public double get(){
-        return Double.longBitsToDouble(value.get());
+        return value;
+    }
+
+    public void set(double new_value){
+        value = new_value;
+    }
+
+    public boolean compareAndSet(double expected, double new_value) {
+        return VALUE.compareAndSet(this, expected, new_value);
+    }
+
+    public double getAndSet(double new_value) {
+        return (double) VALUE.getAndSet(this, new_value);
+    }
+
+    public double addAndGet(double delta) {
+        return getAndAdd(delta) + delta;
     }
-    public synchronized void set(double new_value){
-        cached = new_value;
-        value.set(Double.doubleToLongBits(new_value));
+
+    public double getAndAdd(double delta) {
+        double current;
+        do {
+            current = value;
+        } while (!VALUE.weakCompareAndSet(this, current, current + delta));
+        return current;
     }
-    public double add(double value){
-        set(cached + value);
-        return cached;
+
+    // same as addAndGet, returns the new value
+    public double add(double delta){
+        return addAndGet(delta);
+    }
+
+    public double getAndUpdate(DoubleUnaryOperator update) {
+        double current;
+        do {
+            current = value;
+        } while (!VALUE.weakCompareAndSet(this, current, update.applyAsDouble(current)));
+        return current;
+    }
+
+    public double updateAndGet(DoubleUnaryOperator update) {
+        double current;
+        double next;
+        do {
+            current = value;
+            next = update.applyAsDouble(current);
+        } while (!VALUE.weakCompareAndSet(this, current, next));
+        return next;
+    }
+
+    // `accumulator` may run more than once under contention, so it must not have side effects
+    public double accumulateAndGet(double x, DoubleBinaryOperator accumulator) {
+        double current;
+        double next;
+        do {
+            current = value;
+            next = accumulator.applyAsDouble(current, x);
+        } while (!VALUE.weakCompareAndSet(this, current, next));
+        return next;
+    }
+
+    public double getAndAccumulate(double x, DoubleBinaryOperator accumulator) {
+        double current;
+        do {
+            current = value;
+        } while (!VALUE.weakCompareAndSet(this, current, accumulator.applyAsDouble(current, x)));
+        return current;
     }
 
     @Override
     public String toString() {
-        return "AtomicDouble{" +
-                "value=" + value +
-                ", cached=" + cached +
-                '}';
+        return Double.toString(get());
     }
 }
@@ -0,0 +1,228 @@
+package data.parallel;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * EdgeList is a copy-on-write list for the tree's edges. Readers take the current snapshot without locking, writers
+ * build the next snapshot and publish it with a CAS, retrying if another writer got there first, so neither side ever
+ * waits on a monitor. Entries added with a key (a packed move) are also indexed by it, so duplicates are found in O(1).
+ * Edges are read far more often than written (progressive widening adds one child at a time), which is what makes
+ * copying on write cheap enough. Expansions that create every child at once hand them over together (addAll), so the
+ * edges are copied once per batch instead of once per child.
+ */
+public class EdgeList<E> {
+    public static final int no_key = -1;
+    private static final VarHandle EDGES;
+    private static final Edges empty = new Edges(new Object[0], new int[0], null);
+
+    static {
+        try {
+            EDGES = MethodHandles.lookup().findVarHandle(EdgeList.class, "edges", Edges.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // an immutable snapshot
+    private static final class Edges {
+        final Object[] items;
+        final int[] keys;
+        final int[] index; // open addressing over keys, each slot holds a position + 1, null while nothing has a key
+
+        Edges(Object[] items, int[] keys, int[] index) {
+            this.items = items;
+            this.keys = keys;
+            this.index = index;
+        }
+
+        int Find(int key) {
+            if (index == null) {
+                return -1;
+            }
+            int mask = index.length - 1;
+            for (int slot = Hash(key) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+                int i = index[slot] - 1;
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private volatile Edges edges = empty;
+
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        return (E) edges.items[i];
+    }
+
+    // for loops that may race with a removal, returns null once `i` is past the end
+    @SuppressWarnings("unchecked")
+    public E try_get(int i) {
+        Object[] items = edges.items;
+        return i < items.length ? (E) items[i] : null;
+    }
+
+    // returns the entry added with `key`, or null
+    @SuppressWarnings("unchecked")
+    public E find(int key) {
+        Edges current = edges;
+        int i = current.Find(key);
+        return i < 0 ? null : (E) current.items[i];
+    }
+
+    // returns the key `e` was added with, no_key if it had none or isn't here
+    public int keyOf(E e) {
+        Edges current = edges;
+        int i = IndexOf(current.items, current.items.length, e);
+        return i < 0 ? no_key : current.keys[i];
+    }
+
+    public int size() {
+        return edges.items.length;
+    }
+
+    public boolean isEmpty() {
+        return edges.items.length == 0;
+    }
+
+    public void add(E e) {
+        add(no_key, e);
+    }
+
+    /* Appends `e` unless an entry with the same key (or, without a key, the same object) is already there.
+     * Returns true if `e` was added.
+     * */
+    public boolean add(int key, E e) {
+        return addAll(List.of(e), new int[]{key})[0];
+    }
+
+    /* Appends every entry of `es` (keyed by the same position in `keys`) with a single copy, skipping the ones add
+     * would refuse, including duplicates within the batch. Returns which entries were added.
+     * */
+    public boolean[] addAll(List<? extends E> es, int[] keys) {
+        while (true) {
+            Edges current = edges;
+            int n = current.items.length;
+            int capacity = n + es.size();
+            Object[] items = Arrays.copyOf(current.items, capacity);
+            int[] new_keys = Arrays.copyOf(current.keys, capacity);
+            int[] index = null;
+            if (current.index != null || HasKey(keys)) {
+                index = new int[Integer.highestOneBit(Math.max(1, capacity) * 2) * 2];
+                for (int i = 0; i < n; ++i) {
+                    if (new_keys[i] != no_key) {
+                        Insert(index, new_keys, new_keys[i], i);
+                    }
+                }
+            }
+            boolean[] added = new boolean[es.size()];
+            int size = n;
+            for (int j = 0; j < added.length; ++j) {
+                E e = es.get(j);
+                int key = keys[j];
+                if (key != no_key ? !Insert(index, new_keys, key, size) : IndexOf(items, size, e) >= 0) {
+                    continue;
+                }
+                items[size] = e;
+                new_keys[size] = key;
+                added[j] = true;
+                ++size;
+            }
+            if (size == n) {
+                return added;
+            }
+            if (size < capacity) {
+                items = Arrays.copyOf(items, size);
+                new_keys = Arrays.copyOf(new_keys, size);
+            }
+            if (EDGES.compareAndSet(this, current, new Edges(items, new_keys, index))) {
+                return added;
+            }
+        }
+    }
+
+    public boolean contains(E e) {
+        Object[] items = edges.items;
+        return IndexOf(items, items.length, e) >= 0;
+    }
+
+    // removes `e` (compared by identity), returns true if it was there
+    public boolean remove(E e) {
+        while (true) {
+            Edges current = edges;
+            int n = current.items.length;
+            int i = IndexOf(current.items, n, e);
+            if (i < 0) {
+                return false;
+            }
+            Object[] items = new Object[n - 1];
+            int[] keys = new int[n - 1];
+            System.arraycopy(current.items, 0, items, 0, i);
+            System.arraycopy(current.items, i + 1, items, i, n - i - 1);
+            System.arraycopy(current.keys, 0, keys, 0, i);
+            System.arraycopy(current.keys, i + 1, keys, i, n - i - 1);
+            if (EDGES.compareAndSet(this, current, n == 1 ? empty : new Edges(items, keys, Index(keys)))) {
+                return true;
+            }
+        }
+    }
+
+    public void clear() {
+        edges = empty;
+    }
+
+    private static int IndexOf(Object[] items, int length, Object e) {
+        for (int i = 0; i < length; ++i) {
+            if (items[i] == e) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean HasKey(int[] keys) {
+        for (int key : keys) {
+            if (key != no_key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // open addressing over `keys`, each slot holds a position + 1, null while nothing has a key
+    private static int[] Index(int[] keys) {
+        if (!HasKey(keys)) {
+            return null;
+        }
+        int[] index = new int[Integer.highestOneBit(keys.length * 2) * 2];
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] != no_key) {
+                Insert(index, keys, keys[i], i);
+            }
+        }
+        return index;
+    }
+
+    // indexes `key` at `position`, returns false if the key is already indexed
+    private static boolean Insert(int[] index, int[] keys, int key, int position) {
+        int mask = index.length - 1;
+        int slot = Hash(key) & mask;
+        for (; index[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[index[slot] - 1] == key) {
+                return false;
+            }
+        }
+        index[slot] = position + 1;
+        return true;
+    }
+
+    private static int Hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,88 @@
+package data.parallel;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * StripedDouble is a sum that many threads add to at once, in the style of java.util.concurrent.atomic.DoubleAdder.
+ * Adds go to one base value until a CAS on it fails, then the sum grows a table of cells (one cache line apart) and each
+ * thread adds to the cell its id hashes to, so threads hammering a popular node stop retrying on the same word.
+ * get() adds everything up, it is exact once the adds it should see have returned but isn't a snapshot while they race.
+ */
+public class StripedDouble {
+    private static final VarHandle BASE;
+    private static final VarHandle CELLS;
+    private static final VarHandle CELL = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final int stride = 8; // doubles per cache line
+    private static final int max_cells = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BASE = lookup.findVarHandle(StripedDouble.class, "base", double.class);
+            CELLS = lookup.findVarHandle(StripedDouble.class, "cells", double[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile double base;
+    private volatile double[] cells; // null until there is contention, cell i lives at i * stride
+
+    public void add(double delta) {
+        double[] table = cells;
+        if (table == null) {
+            double current = base;
+            if (BASE.compareAndSet(this, current, current + delta)) {
+                return;
+            }
+            table = Inflate();
+        }
+        int index = (Hash(Thread.currentThread().getId()) & (table.length / stride - 1)) * stride;
+        double current;
+        do {
+            current = (double) CELL.getVolatile(table, index);
+        } while (!CELL.weakCompareAndSet(table, index, current, current + delta));
+    }
+
+    public double get() {
+        double sum = base;
+        double[] table = cells;
+        if (table != null) {
+            for (int i = 0; i < table.length; i += stride) {
+                sum += (double) CELL.getVolatile(table, i);
+            }
+        }
+        return sum;
+    }
+
+    // not atomic with respect to concurrent adds
+    public void reset() {
+        base = 0;
+        double[] table = cells;
+        if (table != null) {
+            for (int i = 0; i < table.length; i += stride) {
+                CELL.setVolatile(table, i, 0.0);
+            }
+        }
+    }
+
+    private double[] Inflate() {
+        double[] table = cells;
+        if (table == null) {
+            CELLS.compareAndSet(this, null, new double[max_cells * stride]);
+            table = cells;
+        }
+        return table;
+    }
+
+    private static int Hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(get());
+    }
+}
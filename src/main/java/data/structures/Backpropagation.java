@@ -0,0 +1,112 @@
+package data.structures;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Backpropagation pushes changes to the heuristic aggregates up through every ancestor of the nodes they were made to.
+ * The tree is a DAG (transpositions merge branches), so the ancestors are collected first and then updated in
+ * topological order: each ancestor waits until all of its children in the set have been updated, then gets one
+ * combined update, instead of one update for every path that leads to it. Nothing recurses and nothing takes a monitor,
+ * each node's aggregates are changed by atomic adds (see GameTreeNode.apply_aggregate).
+ * Changes can be batched with add() and pushed up together with flush(). An instance belongs to one thread.
+ */
+public class Backpropagation {
+    private static final ThreadLocal<Backpropagation> local = ThreadLocal.withInitial(Backpropagation::new);
+
+    private static class Pending {
+        double aggregate;
+        int count;
+        int waiting; // children in the set that haven't passed their change up yet
+    }
+
+    private final IdentityHashMap<GameTreeNode, Pending> pending = new IdentityHashMap<>();
+    private final ArrayList<GameTreeNode> seeds = new ArrayList<>();
+    private final ArrayDeque<GameTreeNode> work = new ArrayDeque<>();
+    private final ArrayList<Pending> pool = new ArrayList<>();
+
+    // pushes one change up from `node` straight away, using the calling thread's instance
+    public static void Apply(GameTreeNode node, double delta_aggregate, int delta_count) {
+        Backpropagation b = local.get();
+        b.add(node, delta_aggregate, delta_count);
+        b.flush();
+    }
+
+    // queues a change to `node`'s aggregates, it reaches the tree on the next flush()
+    public void add(GameTreeNode node, double delta_aggregate, int delta_count) {
+        Pending p = pending.get(node);
+        if (p == null) {
+            p = Claim();
+            pending.put(node, p);
+            seeds.add(node);
+        }
+        p.aggregate += delta_aggregate;
+        p.count += delta_count;
+    }
+
+    public void flush() {
+        if (seeds.isEmpty()) {
+            return;
+        }
+        // collect every ancestor and count the edges each one waits on
+        work.addAll(seeds);
+        while (!work.isEmpty()) {
+            GameTreeNode node = work.poll();
+            for (int i = 0; ; ++i) {
+                GameTreeNode parent = node.try_get_parent(i);
+                if (parent == null) {
+                    break;
+                }
+                Pending p = pending.get(parent);
+                if (p == null) {
+                    p = Claim();
+                    pending.put(parent, p);
+                    work.add(parent);
+                }
+                p.waiting++;
+            }
+        }
+        for (GameTreeNode seed : seeds) {
+            if (pending.get(seed).waiting == 0) {
+                work.add(seed);
+            }
+        }
+        // the parent lists can change while we climb, nodes still waiting when the work runs out just miss this change
+        while (!work.isEmpty()) {
+            GameTreeNode node = work.poll();
+            Pending p = pending.get(node);
+            double change = 0;
+            int count = p.count;
+            if (count != 0) {
+                change = node.apply_aggregate(p.aggregate, count);
+            }
+            for (int i = 0; ; ++i) {
+                GameTreeNode parent = node.try_get_parent(i);
+                if (parent == null) {
+                    break;
+                }
+                Pending q = pending.get(parent);
+                if (q == null) {
+                    continue; // linked after we collected the ancestors
+                }
+                q.aggregate += change;
+                q.count += count;
+                if (--q.waiting == 0) {
+                    work.add(parent);
+                }
+            }
+        }
+        pool.addAll(pending.values());
+        pending.clear();
+        seeds.clear();
+    }
+
+    private Pending Claim() {
+        Pending p = pool.isEmpty() ? new Pending() : pool.remove(pool.size() - 1);
+        p.aggregate = 0;
+        p.count = 0;
+        p.waiting = 0;
+        return p;
+    }
+}
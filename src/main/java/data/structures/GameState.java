@@ -1,21 +1,25 @@
 package data.structures;
 
-import algorithms.search.MoveCompiler;
+import algorithms.search.RayTable;
 import data.BoardPiece;
 import data.Move;
 import data.Position;
 import tools.Tuner;
 
 import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.HashSet;
-import java.util.function.Function;
 
 public class GameState {
-	private static HashSet<Integer> always_empty = null;
-	private ArrayList<Integer> board;
-	private final BoardPiece[] player1 = new BoardPiece[4];
-	private final BoardPiece[] player2 = new BoardPiece[4];
+	// the board is stored as three occupancy layers (player 1, player 2, arrows)
+	// each layer is two words: bits [0,63] live in the low word and bits [64,99] in the high word
+	private long p1_lo = 0;
+	private long p1_hi = 0;
+	private long p2_lo = 0;
+	private long p2_hi = 0;
+	private long arrows_lo = 0;
+	private long arrows_hi = 0;
+	// piece arrays are rebuilt from the bitboards on demand, so copying a state doesn't need to allocate them
+	private BoardPiece[] player1 = null;
+	private BoardPiece[] player2 = null;
 	private Move last_move = null;
 	private boolean p1_state_analyzed = false;
 	private boolean p2_state_analyzed = false;
@@ -23,8 +27,7 @@ public class GameState {
 	private boolean p2_has_moves = true;
 	private int move_number = 1;
 	private int player_turn = 1;
-	private int hash = -1;
-	private boolean valid_hash = false;
+	private long zobrist_key = 0; // kept up to date by SetTile/MakeMove/SetMoveNumber (see Zobrist)
 	private static int[] game_start = { //this is upside down compared to the GUI
 			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
 			0, 0, 0, 0, 2, 0, 0, 2, 0, 0, 0,
@@ -38,57 +41,31 @@ public class GameState {
 			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
 			0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0};
 
-	private void PopulateSet(){
-		if (always_empty == null) {
-			always_empty = new HashSet<>();
-			if(Tuner.state_size > 100) {
-				for (int x = 0; x < 11; ++x) {
-					for (int y = 0; y < 11; ++y) {
-						if (x == 0 || y == 0) {
-							always_empty.add(Position.CalculateIndex(x, y));
-						}
-					}
-				}
-			}
-		}
-	}
 	public GameState(){
 		this(game_start);
 		FindPieces();
 	}
 	public GameState(int[] state){
-		board = new ArrayList<>(Tuner.state_size);
 		if(state.length > Tuner.state_size) {
-			Function<Integer,Integer> convert = (index) -> {
-				int y = index / 11;
-				int x = index - (y * 11);
-				y--;x--;
-				if(x < 0 || y < 0){
-					return -1;
-				}
-				return Position.CalculateIndex(x,y);
-			};
+			int[] tiles = new int[Tuner.state_size];
 			for (int i = 0; i < state.length; ++i) {
-				int index = convert.apply(i);
+				int index = ConvertPaddedIndex(i);
 				if(index >= 0) {
-					board.add(state[i]);
+					tiles[index] = state[i];
 				}
 			}
+			TransformState(tiles);
 		} else {
-			for (int i = 0; i < state.length; ++i) {
-				board.add(state[i]);
-			}
+			TransformState(state);
 		}
-		TransformState();
 	}
 	public GameState(GameState other){
-		board = new ArrayList<>(other.board);
-		if(other.player1 != null && other.player1[0] != null) {
-			for (int i = 0; i < player1.length; ++i) {
-				player1[i] = new BoardPiece(other.player1[i]);
-				player2[i] = new BoardPiece(other.player2[i]);
-			}
-		}
+		p1_lo = other.p1_lo;
+		p1_hi = other.p1_hi;
+		p2_lo = other.p2_lo;
+		p2_hi = other.p2_hi;
+		arrows_lo = other.arrows_lo;
+		arrows_hi = other.arrows_hi;
 		last_move = other.last_move;
 		p1_state_analyzed = other.p1_state_analyzed;
 		p2_state_analyzed = other.p2_state_analyzed;
@@ -96,48 +73,46 @@ public class GameState {
 		p2_has_moves = other.p2_has_moves;
 		move_number = other.move_number;
 		player_turn = other.player_turn;
-		hash = other.hash;
-		valid_hash = other.valid_hash;
+		zobrist_key = other.zobrist_key;
 	}
+	// copy_state is kept for compatibility, the list is never referenced after construction
 	public GameState(ArrayList<Integer> state, boolean find_pieces, boolean copy_state) {
+		int[] tiles = new int[Tuner.state_size];
 		if(state.size() == Tuner.state_size) {
-			if (copy_state) {
-				board = new ArrayList<>(state);
-			} else {
-				board = state;
+			for (int i = 0; i < state.size(); ++i) {
+				tiles[i] = state.get(i);
 			}
 		} else {
-			Function<Integer,Integer> convert = (index) -> {
-				int y = index / 11;
-				int x = index - (y * 11);
-				y--;x--;
-				if(x < 0 || y < 0){
-					return -1;
-				}
-				return Position.CalculateIndex(x,y);
-			};
-			board = new ArrayList<>(Tuner.state_size);
 			for (int i = 0; i < state.size(); ++i) {
-				int index = convert.apply(i);
+				int index = ConvertPaddedIndex(i);
 				if(index >= 0) {
-					board.add(state.get(i));
+					tiles[index] = state.get(i);
 				}
 			}
 		}
-		TransformState();
+		TransformState(tiles);
 		if(find_pieces) {
 			FindPieces();
 		}
 	}
-	private void TransformState(){
-		ArrayList<Integer> transformed_state = new ArrayList<>(board.size());
+	// converts an index on the server's 11x11 board (which has an unused row and column) into our index
+	private static int ConvertPaddedIndex(int index){
+		int y = index / 11;
+		int x = index - (y * 11);
+		y--;x--;
+		if(x < 0 || y < 0){
+			return -1;
+		}
+		return Position.CalculateIndex(x,y);
+	}
+	// flips the rows of the incoming tiles while loading them into the bitboards
+	private void TransformState(int[] tiles){
+		int index = 0;
 		for(int y = Tuner.coord_max; y >= Tuner.coord_min; --y){
 			for(int x = Tuner.coord_min; x <= Tuner.coord_max; ++x){
-				transformed_state.add(board.get(Position.CalculateIndex(x,y)));
+				SetTile(index++, tiles[Position.CalculateIndex(x,y)]);
 			}
 		}
-		board = transformed_state;
-		PopulateSet();
 	}
 
 	public void DebugPrint(){
@@ -152,9 +127,9 @@ public class GameState {
 				if(y != 10){
 					if(x != -Tuner.coord_offset){
 						if(x == Tuner.coord_max){
-							System.out.printf("%2d | %2d", board.get(Position.CalculateIndex(x,y)), Tuner.coord_upper - y);
+							System.out.printf("%2d | %2d", ReadTile(x,y), Tuner.coord_upper - y);
 						} else {
-							System.out.printf("%2d ", board.get(Position.CalculateIndex(x,y)));
+							System.out.printf("%2d ", ReadTile(x,y));
 						}
 					} else {
 						System.out.printf("%2d |", y);
@@ -173,24 +148,62 @@ public class GameState {
 	}
 
 	public void FindPieces(){
-		int p1 = 0;
-		int p2 = 0;
-		int index = 0;
-		for (Integer tile : board) {
-			switch (tile) {
-				case 1:
-					player1[p1++] = new BoardPiece(index,1);
-					break;
-				case 2:
-					player2[p2++] = new BoardPiece(index,2);
-					break;
-			}
-			index++;
+		BoardPiece[] p1 = new BoardPiece[4];
+		BoardPiece[] p2 = new BoardPiece[4];
+		FindPieces(p1, p1_lo, p1_hi, 1);
+		FindPieces(p2, p2_lo, p2_hi, 2);
+		player1 = p1;
+		player2 = p2;
+	}
+	private static void FindPieces(BoardPiece[] pieces, long lo, long hi, int player){
+		int i = 0;
+		while(lo != 0){
+			pieces[i++] = new BoardPiece(Long.numberOfTrailingZeros(lo), player);
+			lo &= lo - 1;
+		}
+		while(hi != 0){
+			pieces[i++] = new BoardPiece(Long.numberOfTrailingZeros(hi) + 64, player);
+			hi &= hi - 1;
+		}
+	}
+
+	// fills `out` with queen tiles, player 1 in [0,3] and player 2 in [4,7], missing queens are -1
+	public void GetQueenTiles(int[] out){
+		GetQueenTiles(out, 0, p1_lo, p1_hi);
+		GetQueenTiles(out, 4, p2_lo, p2_hi);
+	}
+	private static void GetQueenTiles(int[] out, int offset, long lo, long hi){
+		int i = offset;
+		while(lo != 0 && i < offset + 4){
+			out[i++] = Long.numberOfTrailingZeros(lo);
+			lo &= lo - 1;
+		}
+		while(hi != 0 && i < offset + 4){
+			out[i++] = Long.numberOfTrailingZeros(hi) + 64;
+			hi &= hi - 1;
+		}
+		while(i < offset + 4){
+			out[i++] = -1;
 		}
 	}
 
 	public int ReadTile(int index){
-		return board.get(index);
+		if(index < 0 || index >= Tuner.state_size){
+			// the shifts below would wrap around and read some other tile
+			throw new IndexOutOfBoundsException("tile index out of range: " + index);
+		}
+		long lo_bit = index < 64 ? 1L << index : 0;
+		long hi_bit = index < 64 ? 0 : 1L << (index - 64);
+		if(((p1_lo & lo_bit) | (p1_hi & hi_bit)) != 0){
+			return 1;
+		}
+		if(((p2_lo & lo_bit) | (p2_hi & hi_bit)) != 0){
+			return 2;
+		}
+		if(((arrows_lo & lo_bit) | (arrows_hi & hi_bit)) != 0){
+			return 3;
+		}
+		return 0;
 	}
 	public int ReadTile(int x, int y){
 		return ReadTile(Position.CalculateIndex(x,y));
@@ -199,9 +212,65 @@ public class GameState {
 		return ReadTile(pos.x,pos.y);
 	}
 
+	public boolean IsEmpty(int index){
+		if(index < 64) {
+			return ((p1_lo | p2_lo | arrows_lo) & (1L << index)) == 0;
+		}
+		return ((p1_hi | p2_hi | arrows_hi) & (1L << (index - 64))) == 0;
+	}
+
+	// word 0 holds tiles [0,63], word 1 holds tiles [64,99]
+	public long GetOccupied(int word){
+		return word == 0 ? p1_lo | p2_lo | arrows_lo : p1_hi | p2_hi | arrows_hi;
+	}
+
+	public long GetPlayerOccupied(int player, int word){
+		switch(player){
+			case 1:
+				return word == 0 ? p1_lo : p1_hi;
+			case 2:
+				return word == 0 ? p2_lo : p2_hi;
+			case 3:
+				return word == 0 ? arrows_lo : arrows_hi;
+		}
+		return 0;
+	}
+
 	public void SetTile(int index, int value){
-		valid_hash = board.set(index, value) == value && valid_hash; // last == new && valid_hash
-		// ie. true if already true AND the new value for the tile is the same as what was already there, otherwise false. IDE suggested this form so figured I'd explain it
+		zobrist_key ^= Zobrist.TileKey(index, ReadTile(index)) ^ Zobrist.TileKey(index, value);
+		if(index < 64) {
+			long mask = 1L << index;
+			p1_lo &= ~mask;
+			p2_lo &= ~mask;
+			arrows_lo &= ~mask;
+			switch (value) {
+				case 1:
+					p1_lo |= mask;
+					break;
+				case 2:
+					p2_lo |= mask;
+					break;
+				case 3:
+					arrows_lo |= mask;
+					break;
+			}
+		} else {
+			long mask = 1L << (index - 64);
+			p1_hi &= ~mask;
+			p2_hi &= ~mask;
+			arrows_hi &= ~mask;
+			switch (value) {
+				case 1:
+					p1_hi |= mask;
+					break;
+				case 2:
+					p2_hi |= mask;
+					break;
+				case 3:
+					arrows_hi |= mask;
+					break;
+			}
+		}
 	}
 	public void SetTile(int x, int y, int value){
 		SetTile(Position.CalculateIndex(x,y),value);
@@ -221,11 +290,12 @@ public class GameState {
 					return p2_has_moves;
 				break;
 		}
-		var pieces = player_num == 1 ? player1 : player2;
+		var pieces = GetPlayerPieces(player_num);
 		for (BoardPiece piece : pieces) {
-			Position[] neighbours = MoveCompiler.GetNeighbours(piece.CalculateIndex());
-			for(Position n : neighbours){
-				if(n.IsValid() && ReadTile(n.CalculateIndex()) == 0){
+			int index = piece.CalculateIndex();
+			for(int direction = 0; direction < RayTable.directions; ++direction){
+				int[] ray = RayTable.GetRay(index, direction);
+				if(ray.length > 0 && IsEmpty(ray[0])){
 					switch (player_num) {
 						case 1:
 							p1_has_moves = true;
@@ -258,13 +328,13 @@ public class GameState {
 
 	public boolean MakeMove(Move move, boolean update_pieces, boolean print_move_num) {
 		//if the move doesn't include invalid indices, check if the move is valid for this state
-		if (!always_empty.contains(move.start) && !always_empty.contains(move.next) && !always_empty.contains(move.arrow)) {
+		if (IsValidIndex(move.start) && IsValidIndex(move.next) && IsValidIndex(move.arrow)) {
 			if (move.IsValidFor(this)) {
 				int player = ReadTile(move.start);
 				if(this.player_turn != player){
 					return false;
 				}
-				if (update_pieces) {
+				if (update_pieces && player1 != null) { // pieces that haven't been found yet will be found from the bitboards
 					BoardPiece[] arr = null;
 					switch (player) {
 						case 1:
@@ -299,15 +369,23 @@ public class GameState {
 						break;
 				}
 				player_turn = player_turn == 1 ? 2 : 1;
-				valid_hash = false;
+				zobrist_key ^= Zobrist.side_key;
 				return true;
 			}
 		}
 		return false;
 	}
 
+	private static boolean IsValidIndex(int index){
+		return index >= 0 && index < Tuner.state_size;
+	}
+
 	public void SetMoveNumber(int move_number) {
-		player_turn = move_number % 2 == 0 ? 2 : 1;
+		int turn = move_number % 2 == 0 ? 2 : 1;
+		if(turn != player_turn){
+			zobrist_key ^= Zobrist.side_key;
+		}
+		player_turn = turn;
 		this.move_number = move_number;
 	}
 
@@ -323,7 +401,14 @@ public class GameState {
 		return player_turn == 1 ? 2 : 1;
 	}
 
+	private void EnsurePieces(){
+		if(player1 == null || player2 == null){
+			FindPieces();
+		}
+	}
+
 	public BoardPiece[] GetTurnPieces(){
+		EnsurePieces();
 		switch(player_turn){
 			case 1:
 				return player1;
@@ -334,6 +419,7 @@ public class GameState {
 	}
 
 	public BoardPiece[] GetPrevTurnPieces(){
+		EnsurePieces();
 		switch(player_turn){
 			case 2:
 				return player1;
@@ -344,6 +430,7 @@ public class GameState {
 	}
 
 	public final BoardPiece[] GetPlayerPieces(int player){
+		EnsurePieces();
 		switch(player){
 			case 1:
 				return player1;
@@ -353,23 +440,16 @@ public class GameState {
 		return null;
 	}
 
+	public Move GetLastMove(){
+		return last_move;
+	}
+
+	public long GetZobristKey(){
+		return zobrist_key;
+	}
+
 	public int hashCode(){
-		if(valid_hash){
-			return hash;
-		}
-		BitSet hasher = new BitSet(200);
-		int index_count = 0;
-		for(int index = 0; index < board.size(); ++index){
-			if(!always_empty.contains(index)) {
-				for (int bit = 0; bit < 2; ++bit) {
-					boolean x = (board.get(index) & bit) != 0;
-					hasher.set((index_count++ * 2) + bit, x);
-				}
-			}
-		}
-		hash = hasher.hashCode();
-		valid_hash = true;
-		return hash;
+		return Long.hashCode(zobrist_key);
 	}
 
 	@Override
@@ -377,6 +457,10 @@ public class GameState {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		GameState that = (GameState) o;
-		return board.equals(that.board) && ((last_move == null && that.last_move == null) || (last_move != null && last_move.equals(that.last_move)));
+		return p1_lo == that.p1_lo && p1_hi == that.p1_hi
+				&& p2_lo == that.p2_lo && p2_hi == that.p2_hi
+				&& arrows_lo == that.arrows_lo && arrows_hi == that.arrows_hi
+				&& player_turn == that.player_turn
+				&& ((last_move == null && that.last_move == null) || (last_move != null && last_move.equals(that.last_move)));
 	}
 }
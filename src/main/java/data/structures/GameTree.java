@@ -1,46 +1,134 @@
 package data.structures;
 
-import java.util.concurrent.ConcurrentHashMap;
+import tools.Tuner;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * GameTree is a fixed capacity, open addressed transposition table from GameState to GameTreeNode.
+ * Slots are found by the state's Zobrist key and probed in small buckets, the key and move number of each entry
+ * are kept in primitive arrays so probing doesn't touch the nodes themselves.
+ *
+ * Nothing here locks. A racing writer can at worst lose an insert or replace an entry, and every hit is checked
+ * against the node's own state before it is returned, so readers never see the wrong node.
+ */
 public class GameTree {
-    private static final ConcurrentHashMap<Integer,
-            ConcurrentHashMap<GameState, GameTreeNode>> game_tree = new ConcurrentHashMap<>();
+    private static final int bucket_size = 4;
+    private static final int capacity = Integer.highestOneBit(Math.max(bucket_size, Tuner.game_tree_capacity));
+    private static final int mask = capacity - 1;
+    private static final long[] keys = new long[capacity];
+    private static final int[] move_numbers = new int[capacity];
+    private static final AtomicReferenceArray<GameTreeNode> nodes = new AtomicReferenceArray<>(capacity);
+    private static final AtomicInteger count = new AtomicInteger();
+    // the root's move number, entries before it can never be reached again (see advance)
+    private static volatile int root_move = Integer.MIN_VALUE;
 
     public static long size(){
-        long size = 0;
-        for(var pair : game_tree.entrySet()){
-            size += pair.getValue().size();
-        }
-        return size;
+        return count.get();
+    }
+
+    public static long capacity(){
+        return capacity;
+    }
+
+    private static int slot(long key){
+        return (int)(key ^ (key >>> 32)) & mask;
     }
 
     public static void put(GameTreeNode node){
         GameState board = node.state_after_move.get();
-        var inner_map = game_tree.get(board.GetMoveNumber()-1);
-        if(inner_map == null) {
-            inner_map = new ConcurrentHashMap<>();
-            game_tree.put(board.GetMoveNumber()-1, inner_map);
-            inner_map.put(board,node);
-        } else if(!inner_map.containsKey(board)){
-            inner_map.put(board,node);
+        long key = board.GetZobristKey();
+        int move_number = board.GetMoveNumber();
+        int base = slot(key);
+        int victim = -1;
+        int victim_score = Integer.MIN_VALUE;
+        for(int i = 0; i < bucket_size; ++i){
+            int slot = (base + i) & mask;
+            GameTreeNode existing = nodes.get(slot);
+            if(existing == null){
+                if(nodes.compareAndSet(slot, null, node)){
+                    keys[slot] = key;
+                    move_numbers[slot] = move_number;
+                    count.incrementAndGet();
+                    return;
+                }
+                existing = nodes.get(slot);
+                if(existing == null){
+                    continue; // it was pruned just now, someone else can have it
+                }
+            }
+            if(keys[slot] == key && board.equals(existing.state_after_move.get())){
+                return; // already in the table
+            }
+            int score = replacement_score(move_numbers[slot]);
+            if(score > victim_score){
+                victim_score = score;
+                victim = slot;
+            }
+        }
+        if(victim >= 0) {
+            // the bucket is full, so we replace whichever entry is cheapest to lose
+            nodes.set(victim, node);
+            keys[victim] = key;
+            move_numbers[victim] = move_number;
         }
     }
 
+    /* Entries behind the root are replaced first.
+     * After that we prefer to keep the shallow entries (earlier move numbers, closer to the root) since they have
+     * the most search below them, so the deepest entry in the bucket is replaced.
+     * */
+    private static int replacement_score(int move_number){
+        if(move_number < root_move){
+            return Integer.MAX_VALUE;
+        }
+        return move_number;
+    }
+
     public static GameTreeNode get(GameState board){
-        var inner_map = game_tree.get(board.GetMoveNumber()-1);
-        if(inner_map != null){
-            return inner_map.get(board);
+        long key = board.GetZobristKey();
+        int base = slot(key);
+        for(int i = 0; i < bucket_size; ++i){
+            int slot = (base + i) & mask;
+            if(keys[slot] == key){
+                GameTreeNode node = nodes.get(slot);
+                if(node != null && board.equals(node.state_after_move.get())){
+                    return node;
+                }
+            }
         }
         return null;
     }
 
-    public static void prune(int move_num){
-        var inner_map = game_tree.get(move_num);
-        if(inner_map != null) {
-            for (GameTreeNode node : inner_map.values()) {
-                node.disown_children();
+    public static void remove(GameTreeNode node){
+        long key = node.state_after_move.get().GetZobristKey();
+        int base = slot(key);
+        for(int i = 0; i < bucket_size; ++i){
+            int slot = (base + i) & mask;
+            if(nodes.get(slot) == node && nodes.compareAndSet(slot, node, null)){
+                count.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /* Marks the entries before `move_num` as behind the root, they are the first to be replaced.
+     * GameTreeReclaimer removes the ones it frees as it goes, so nothing here sweeps the table.
+     * */
+    public static void advance(int move_num){
+        root_move = Math.max(root_move, move_num);
+    }
+
+    // empties the table for a new game, whose move numbers start over
+    public static void reset(){
+        root_move = Integer.MIN_VALUE;
+        for(int slot = 0; slot < capacity; ++slot){
+            if(nodes.getAndSet(slot, null) != null){
+                count.decrementAndGet();
             }
-            game_tree.remove(move_num);
+            keys[slot] = 0;
+            move_numbers[slot] = 0;
         }
     }
 }
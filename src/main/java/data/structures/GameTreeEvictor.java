@@ -0,0 +1,159 @@
+package data.structures;
+
+import tools.Debug;
+import tools.Tuner;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * GameTreeEvictor keeps the game tree inside the memory budget (Tuner.game_tree_memory_mb).
+ * When the heap in use goes over budget it walks the trees from their roots and detaches the leaves with the fewest visits
+ * (the deepest first when visits tie) until the estimated size is back under Tuner.eviction_target of the budget.
+ * Visits are the search's (MonteCarlo) count, and the aggregation count for nodes only BreadthFirst has reached.
+ * A parent gets an evicted child's move back as untried (see GameTreeNode.detach), so the search can grow it again.
+ * While over budget the searches stop creating nodes, so we slow down instead of running out of memory.
+ * The heap is measured as it was after the last garbage collection, so nodes we've already detached (and any other
+ * garbage) aren't counted, and nothing is evicted again until a collection has shown what the last pass freed.
+ */
+public class GameTreeEvictor {
+    private static final long budget = Math.min((long)Tuner.game_tree_memory_mb << 20, (long)(Runtime.getRuntime().maxMemory() * 0.9));
+    private static final AtomicBoolean over_budget = new AtomicBoolean(false);
+    private static long last_collections = -1; // collections counted at the last pass that evicted
+
+    private static class Candidate {
+        final GameTreeNode node;
+        final int visits;
+        final int depth;
+
+        Candidate(GameTreeNode node, int depth) {
+            this.node = node;
+            this.visits = node.visits() > 0 ? node.visits() : node.heuristic.aggregate_count;
+            this.depth = depth;
+        }
+    }
+
+    public static boolean IsOverBudget() {
+        return over_budget.get();
+    }
+
+    // the heap in use after the last collection, or everything in use if the pools don't report it
+    public static long UsedMemory() {
+        long used = 0;
+        boolean reported = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                    reported = true;
+                }
+            }
+        }
+        if (!reported) {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+        return used;
+    }
+
+    private static long CollectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    // `roots` gives every tree that counts against the budget, the shared one and any private (root parallel) ones
+    public static void Run(Supplier<List<GameTreeNode>> roots) {
+        Debug.PrintThreadID("GameTreeEvictor");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Enforce(roots.get());
+                Thread.sleep(Tuner.eviction_interval);
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    // returns the number of nodes evicted
+    public static int Enforce(GameTreeNode root) {
+        return Enforce(root == null ? List.of() : List.of(root));
+    }
+
+    public static int Enforce(List<GameTreeNode> roots) {
+        long collections = CollectionCount();
+        long used = UsedMemory();
+        over_budget.set(used > budget);
+        if (roots.isEmpty() || used <= budget || collections == last_collections) {
+            return 0; // the usage hasn't been measured since our last pass, it still counts what we evicted then
+        }
+        last_collections = collections;
+        Set<GameTreeNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<GameTreeNode> leaves = Leaves(roots, seen);
+        double bytes_per_node = (double)used / seen.size();
+        long target_nodes = (long)((budget * Tuner.eviction_target) / bytes_per_node);
+        int to_evict = (int)Math.min(leaves.size(), Math.max(0, seen.size() - target_nodes));
+        Evict(leaves, to_evict);
+        Debug.RunInfoL1DebugCode(() -> System.out.printf("GameTreeEvictor: %d MB in use, evicted %d of %d nodes\n", used >> 20, to_evict, seen.size()));
+        return to_evict;
+    }
+
+    /* Walks the trees (they are DAGs, so `seen` tracks what we've reached) and returns the leaves we're allowed to drop,
+     * in the order we drop them.
+     * */
+    static ArrayList<GameTreeNode> Leaves(List<GameTreeNode> roots, Set<GameTreeNode> seen) {
+        ArrayDeque<GameTreeNode> queue = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        ArrayList<Candidate> leaves = new ArrayList<>();
+        for (GameTreeNode root : roots) {
+            if (seen.add(root)) {
+                queue.add(root);
+                depths.add(0);
+            }
+        }
+        while (!queue.isEmpty()) {
+            GameTreeNode node = queue.poll();
+            int depth = depths.poll();
+            if (node.is_leaf()) {
+                if (depth > 1) { // the root's edges are what we choose our move from, so those always stay
+                    leaves.add(new Candidate(node, depth));
+                }
+                continue;
+            }
+            for (int i = 0; i < node.edges(); ++i) {
+                GameTreeNode child = node.get(i);
+                if (seen.add(child)) {
+                    queue.add(child);
+                    depths.add(depth + 1);
+                }
+            }
+        }
+        leaves.sort((a, b) -> a.visits != b.visits ? Integer.compare(a.visits, b.visits) : Integer.compare(b.depth, a.depth));
+        ArrayList<GameTreeNode> order = new ArrayList<>(leaves.size());
+        for (Candidate leaf : leaves) {
+            order.add(leaf.node);
+        }
+        return order;
+    }
+
+    // detaches the first `count` leaves
+    static void Evict(List<GameTreeNode> leaves, int count) {
+        for (int i = 0; i < count; ++i) {
+            GameTreeNode node = leaves.get(i);
+            node.detach();
+            GameTree.remove(node);
+        }
+    }
+}
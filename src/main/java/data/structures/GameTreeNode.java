@@ -2,12 +2,18 @@ package data.structures;
 
 import data.Heuristic;
 import data.Move;
-import data.parallel.SynchronizedArrayList;
+import data.parallel.StripedDouble;
+import data.parallel.EdgeList;
 import org.apache.commons.math3.util.Precision;
 import tools.Tuner;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * GameTreeNode represents a Move and the value that move has for the player making it
@@ -18,11 +24,18 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 
 public class GameTreeNode {
-    private final SynchronizedArrayList<GameTreeNode> super_nodes = new SynchronizedArrayList<>();
-    private final SynchronizedArrayList<GameTreeNode> sub_nodes = new SynchronizedArrayList<>(); //note: that there is no way to remove nodes! this is by design!
+    private final EdgeList<GameTreeNode> super_nodes = new EdgeList<>();
+    private final EdgeList<GameTreeNode> sub_nodes = new EdgeList<>(); //note: nodes are only removed by GameTreeEvictor, children are keyed by the packed move leading to them
     public final Heuristic heuristic = new Heuristic();
     final public AtomicReference<Move> move = new AtomicReference<>();
     final public AtomicReference<GameState> state_after_move = new AtomicReference<>();
+    // search statistics, rewards are in [0,1] from the perspective of the player who made `move`
+    private final AtomicInteger visits = new AtomicInteger();
+    private final StripedDouble reward = new StripedDouble(); // the root and its best children are added to by every search thread
+    // moves that haven't been expanded into children yet (packed, see Move.Pack), handed out one at a time
+    private volatile int[] untried_moves = null;
+    private final AtomicInteger untried_index = new AtomicInteger();
+    private volatile ConcurrentLinkedQueue<Integer> evicted_moves = null; // handed out moves whose child GameTreeEvictor dropped
 
     public GameTreeNode(Move move, GameTreeNode parent, GameState state_after_move) {
         this.move.set(move);
@@ -36,6 +49,11 @@ public class GameTreeNode {
         return sub_nodes.get(index);
     }
 
+    // returns null once `index` is past the end, for loops that may race with GameTreeEvictor
+    public GameTreeNode try_get(int index) {
+        return sub_nodes.try_get(index);
+    }
+
     public int edges() {
         return sub_nodes.size();
     }
@@ -43,45 +61,188 @@ public class GameTreeNode {
     private void add_parent(GameTreeNode parent) {
         super_nodes.add(parent);
         // deal with merging tree branches
-        if (heuristic.has_propagated.get()) { //if the node already told parents about children
+        if (heuristic.has(Heuristic.has_propagated)) { //if the node already told parents about children
             force_propagate();
-            if (heuristic.has_aggregated.get()) { //if the node has any aggregation data
-                double parents_new_aggregate = parent.heuristic.aggregate.get() + heuristic.aggregate.get();
-                int parents_new_aggregate_count = parent.heuristic.aggregate_count.get() + heuristic.aggregate_count.get();
-                parent.update_aggregate(parents_new_aggregate, parents_new_aggregate_count);
+            if (heuristic.has(Heuristic.has_aggregated)) { //if the node has any aggregation data
+                Backpropagation.Apply(parent, heuristic.aggregate, heuristic.aggregate_count);
             }
         }
     }
 
     public void adopt(GameTreeNode node) {
+        Move move = node.move.get();
+        adopt(node, move == null ? EdgeList.no_key : move.Packed());
+    }
+
+    /* `packed` is the move from this node to `node`, which isn't node.move when the node was first reached from
+     * another parent (a transposition).
+     * */
+    public void adopt(GameTreeNode node, int packed) {
         //we don't do anything with heuristics because they won't exist yet when this method is used (RunSim/PruneMoves)
         if (this != node) { //no idea why node == this (other than it happens in the MonteCarlo else)
-            if (!sub_nodes.contains(node)) {
+            if (sub_nodes.add(packed, node)) {
                 node.add_parent(this);
-                sub_nodes.add(node);
             }
         }
     }
 
-    public void disown_children() {
-        for (int i = 0; i < sub_nodes.size(); ++i) {
-            sub_nodes.get(i).super_nodes.clear(); // we're only going to be running this during memory cleanup
-            // unless that changes this incorrect looking function is actually correct
+    // adopts a whole expansion with one copy of our edges rather than one per child
+    public void adopt_all(List<GameTreeNode> nodes) {
+        if (nodes.contains(this)) { //same guard as adopt
+            nodes = new ArrayList<>(nodes);
+            nodes.remove(this);
+        }
+        int[] keys = new int[nodes.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            Move move = nodes.get(i).move.get();
+            keys[i] = move == null ? EdgeList.no_key : move.Packed();
+        }
+        boolean[] added = sub_nodes.addAll(nodes, keys);
+        for (int i = 0; i < added.length; ++i) {
+            if (added[i]) {
+                nodes.get(i).add_parent(this);
+            }
+        }
+    }
+
+    // returns the child reached by the packed move, or null
+    public GameTreeNode find_child(int packed) {
+        return sub_nodes.find(packed);
+    }
+
+    public int visits() {
+        return visits.get();
+    }
+
+    public double mean_reward() {
+        int n = visits.get();
+        return n == 0 ? 0 : reward.get() / n;
+    }
+
+    public void add_result(double result) {
+        reward.add(result);
+        visits.incrementAndGet();
+    }
+
+    // counts a visit before its result is known, so concurrent searches see a loss here and spread out
+    public void add_virtual_loss() {
+        visits.incrementAndGet();
+    }
+
+    // completes a visit started by add_virtual_loss
+    public void add_virtual_result(double result) {
+        reward.add(result);
+    }
+
+    public boolean has_untried_moves() {
+        ConcurrentLinkedQueue<Integer> evicted = evicted_moves;
+        return untried_moves == null || untried_index.get() < untried_moves.length || (evicted != null && !evicted.isEmpty());
+    }
+
+    public boolean needs_untried_moves() {
+        return untried_moves == null;
+    }
+
+    // the first caller to provide the moves wins, everyone else's list is ignored
+    public synchronized void set_untried_moves(int[] moves) {
+        if (untried_moves == null) {
+            untried_moves = moves;
         }
     }
 
-    public synchronized void propagate() {
+    // number of moves handed out by next_untried_move so far, less the ones waiting to be handed out again
+    public int expanded() {
+        ConcurrentLinkedQueue<Integer> evicted = evicted_moves;
+        int handed_out = Math.min(untried_index.get(), untried_moves == null ? 0 : untried_moves.length);
+        return Math.max(0, handed_out - (evicted == null ? 0 : evicted.size()));
+    }
+
+    // returns the next packed move to expand (evicted ones first), or -1 when every move has been handed out
+    public int next_untried_move() {
+        ConcurrentLinkedQueue<Integer> evicted = evicted_moves;
+        if (evicted != null) {
+            Integer packed = evicted.poll();
+            if (packed != null) {
+                return packed;
+            }
+        }
+        int[] moves = untried_moves;
+        if (moves != null) {
+            int i = untried_index.getAndIncrement();
+            if (i < moves.length) {
+                return moves[i];
+            }
+        }
+        return -1;
+    }
+
+    public boolean is_leaf() {
+        return sub_nodes.isEmpty();
+    }
+
+    /* Unlinks this node from every parent, used by GameTreeEvictor to let the node be collected and to promote a new root.
+     * A parent that handed out the move to us gets it back, so progressive widening can grow this branch again.
+     * */
+    void detach() {
+        for (int i = 0; ; ++i) {
+            GameTreeNode parent = super_nodes.try_get(i);
+            if (parent == null) {
+                break;
+            }
+            int packed = parent.sub_nodes.keyOf(this);
+            if (parent.sub_nodes.remove(this) && packed != EdgeList.no_key) {
+                parent.requeue_move(packed);
+            }
+        }
+        super_nodes.clear();
+    }
+
+    // queues `packed` for next_untried_move again if it was already handed out, the rest are still to come
+    private synchronized void requeue_move(int packed) {
+        int[] moves = untried_moves;
+        if (moves == null) {
+            return; // MonteCarlo hasn't expanded us, it will list every move when it does
+        }
+        int handed_out = Math.min(untried_index.get(), moves.length);
+        for (int i = 0; i < handed_out; ++i) {
+            if (moves[i] == packed) {
+                if (evicted_moves == null) {
+                    evicted_moves = new ConcurrentLinkedQueue<>();
+                }
+                evicted_moves.add(packed);
+                return;
+            }
+        }
+    }
+
+    /* Unlinks this node from its children's parent lists, used by GameTreeReclaimer once nothing reaches this node.
+     * The children left without a parent are handed to `orphaned`. Our own edges are kept, a search that picked this
+     * node up before it was reclaimed can still walk it.
+     * */
+    void release_children(Consumer<GameTreeNode> orphaned) {
+        for (int i = 0; ; ++i) {
+            GameTreeNode child = sub_nodes.try_get(i);
+            if (child == null) {
+                break;
+            }
+            if (child.super_nodes.remove(this) && child.super_nodes.isEmpty()) {
+                orphaned.accept(child);
+            }
+        }
+    }
+
+    public void propagate() {
         if(!Tuner.disable_propagation_code) {
-            if (!heuristic.has_propagated.get()) {
-                force_propagate();
+            if (heuristic.claim(Heuristic.has_propagated)) { // only the first caller propagates
+                push_bounds();
                 if(!state_after_move.get().CanGameContinue()) {
                     double ab = Tuner.get_aggregate_base(heuristic);
                     if(Tuner.use_only_winning){
                         if(!Precision.equals(ab, 0, 0.0001)){
-                            update_aggregate(ab, heuristic.aggregate_count.get() + 1);
+                            Backpropagation.Apply(this, ab - heuristic.aggregate, 1);
                         }
                     } else {
-                        update_aggregate(ab, heuristic.aggregate_count.get() + 1);
+                        Backpropagation.Apply(this, ab - heuristic.aggregate, 1);
                     }
                 }
             }
@@ -90,53 +251,52 @@ public class GameTreeNode {
 
     public void one_node_aggregation(){
         if(!Tuner.disable_propagation_code) {
-            if (!heuristic.has_aggregated.get()) {
-                heuristic.has_aggregated.set(true);
-                double aggregate = heuristic.aggregate.add(Tuner.get_aggregate_base(heuristic));
-                heuristic.aggregate_avg.set(aggregate / heuristic.aggregate_count.incrementAndGet());
+            if (heuristic.claim(Heuristic.has_aggregated)) {
+                double aggregate = heuristic.add_aggregate(Tuner.get_aggregate_base(heuristic));
+                heuristic.aggregate_avg = aggregate / heuristic.increment_aggregate_count();
             }
         }
     }
 
     private void force_propagate() {
         if(!Tuner.disable_propagation_code) {
-            heuristic.has_propagated.set(true);
-            double h = Tuner.get_aggregate_base(heuristic);
-            for (int i = 0; i < super_nodes.size(); ++i) {
-                GameTreeNode parent = super_nodes.get(i);
-                if (parent.heuristic.maximum_sub.get() < h) {
-                    parent.heuristic.maximum_sub.set(h);
-                }
-                if (parent.heuristic.minimum_sub.get() > h) {
-                    parent.heuristic.minimum_sub.set(h);
-                }
-            }
+            heuristic.set(Heuristic.has_propagated);
+            push_bounds();
         }
     }
 
-    private synchronized void update_aggregate(double new_aggregate, int new_aggregate_count) {
-        if(!Tuner.disable_propagation_code) {
-            heuristic.has_aggregated.set(true);
-            new_aggregate = Math.max(new_aggregate, 0);
-            int delta_count = new_aggregate_count - heuristic.aggregate_count.get();
-            if (delta_count != 0) {
-                double delta_aggregate = new_aggregate - heuristic.aggregate.get();
-                double m = new_aggregate / new_aggregate_count;
-                heuristic.aggregate.set(new_aggregate);
-                heuristic.aggregate_avg.set(m);
-                heuristic.aggregate_count.set(new_aggregate_count);
-                if(Tuner.use_winner_aggregate && !Tuner.use_winner_heuristic){
-                    heuristic.has_winner.set(true);
-                    heuristic.winner.set(m);
-                }
-                for (int i = 0; i < super_nodes.size(); ++i) {
-                    GameTreeNode parent = super_nodes.get(i);
-                    double new_p_aggregate = parent.heuristic.aggregate.get() + delta_aggregate;
-                    int new_p_aggregate_count = parent.heuristic.aggregate_count.get() + delta_count;
-                    parent.update_aggregate(new_p_aggregate, new_p_aggregate_count);
-                }
+    // tells every parent about our value, for their min/max over their children
+    private void push_bounds() {
+        double h = Tuner.get_aggregate_base(heuristic);
+        for (int i = 0; ; ++i) {
+            GameTreeNode parent = super_nodes.try_get(i);
+            if (parent == null) {
+                break; // we've been detached while propagating
             }
+            parent.heuristic.raise_maximum_sub(h);
+            parent.heuristic.lower_minimum_sub(h);
+        }
+    }
+
+    // for Backpropagation, returns null once `index` is past the end
+    GameTreeNode try_get_parent(int index) {
+        return super_nodes.try_get(index);
+    }
+
+    /* Applies an aggregate change to this node alone (Backpropagation carries it to the ancestors).
+     * Returns how much the aggregate actually changed, it can't go below 0.
+     * */
+    double apply_aggregate(double delta_aggregate, int delta_count) {
+        heuristic.set(Heuristic.has_aggregated);
+        double change = heuristic.add_aggregate_clamped(delta_aggregate);
+        int count = heuristic.add_aggregate_count(delta_count);
+        double m = heuristic.aggregate / count;
+        heuristic.aggregate_avg = m;
+        if(Tuner.use_winner_aggregate && !Tuner.use_winner_heuristic){
+            heuristic.set(Heuristic.has_winner);
+            heuristic.winner = m;
         }
+        return change;
     }
 
     @Override
@@ -153,7 +313,7 @@ public class GameTreeNode {
 
     @Override
     public String toString() {
-        return String.format("%s%s",move,heuristic);
+        return String.format("%svisits: %d\nmean reward: %.4f\n%s",move,visits(),mean_reward(),heuristic);
     }
 
     // used in PruneMoves to sort moves according to best for us and least beneficial to the enemy
@@ -162,22 +322,22 @@ public class GameTreeNode {
         public int compare(GameTreeNode o1, GameTreeNode o2) {
             Heuristic h1 = o1.heuristic;
             Heuristic h2 = o2.heuristic;
-            if (h1.is_ready.get() && h2.is_ready.get()) {
-                return Double.compare(h1.value.get(), h2.value.get());
+            if (h1.has(Heuristic.is_ready) && h2.has(Heuristic.is_ready)) {
+                return Double.compare(h1.value, h2.value);
             }
-            if (h1.has_amazongs.get() && h2.has_amazongs.get()) {
-                return Double.compare(h1.amazongs.get(), h2.amazongs.get());
+            if (h1.has(Heuristic.has_amazongs) && h2.has(Heuristic.has_amazongs)) {
+                return Double.compare(h1.amazongs, h2.amazongs);
             }
-            if (h1.has_mobility.get() && h2.has_mobility.get()) {
-                return Double.compare(h1.mobility.get(), h2.mobility.get());
+            if (h1.has(Heuristic.has_mobility) && h2.has(Heuristic.has_mobility)) {
+                return Double.compare(h1.mobility, h2.mobility);
             }
-            if (h1.has_territory.get() && h2.has_territory.get()) {
-                return Double.compare(h1.territory.get(), h2.territory.get());
+            if (h1.has(Heuristic.has_territory) && h2.has(Heuristic.has_territory)) {
+                return Double.compare(h1.territory, h2.territory);
             }
-            if (h1.has_propagated.get() && h2.has_propagated.get()) {
-                return Double.compare(h1.aggregate_avg.get(), h2.aggregate_avg.get());
+            if (h1.has(Heuristic.has_propagated) && h2.has(Heuristic.has_propagated)) {
+                return Double.compare(h1.aggregate_avg, h2.aggregate_avg);
             }
-            return Double.compare(h1.mobility.get(), h2.mobility.get()); //this may be set, but not flagged (reduction/freedom)
+            return Double.compare(h1.mobility, h2.mobility); //this may be set, but not flagged (reduction/freedom)
         }
     }
 }
@@ -0,0 +1,75 @@
+package data.structures;
+
+import tools.Debug;
+import tools.Tuner;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GameTreeReclaimer frees the part of the tree left behind when a move is played.
+ * Promote makes the played move's node the root, with its subtree and statistics as they are, and hands the old root
+ * over to be reclaimed. Reclaiming happens a slice at a time on a background thread (Run), so the new turn's search
+ * isn't held up by one big sweep.
+ * The tree is a DAG, so a node is only reclaimed once its last parent has been. Each reclaimed node is dropped from
+ * GameTree and from its children's parent lists, and the children left without a parent are reclaimed next. Nodes the
+ * new root still reaches keep a parent in its subtree, so they are never reclaimed.
+ */
+public class GameTreeReclaimer {
+    private static final ConcurrentLinkedQueue<GameTreeNode> garbage = new ConcurrentLinkedQueue<>();
+    private static volatile GameTreeNode root = null;
+    private static final AtomicLong reclaimed = new AtomicLong();
+
+    // makes `new_root` the root, whatever only `old_root` reached is reclaimed in the background
+    public static void Promote(GameTreeNode old_root, GameTreeNode new_root) {
+        root = new_root;
+        new_root.detach();
+        GameTree.advance(new_root.state_after_move.get().GetMoveNumber());
+        if (old_root != null && old_root != new_root) {
+            garbage.add(old_root);
+        }
+    }
+
+    public static void Run() {
+        Debug.PrintThreadID("GameTreeReclaimer");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (Step(Tuner.reclaim_batch) == 0) {
+                    Thread.sleep(Tuner.reclaim_interval);
+                } else {
+                    Thread.yield(); // the searches come first
+                }
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    // reclaims up to `budget` nodes, returns how many it did
+    public static int Step(int budget) {
+        int done = 0;
+        GameTreeNode node;
+        while (done < budget && (node = garbage.poll()) != null) {
+            if (node == root || node.try_get_parent(0) != null) {
+                continue; // a search linked it back into the tree
+            }
+            GameTree.remove(node);
+            node.release_children(GameTreeReclaimer::Orphaned);
+            ++done;
+        }
+        reclaimed.addAndGet(done);
+        return done;
+    }
+
+    private static void Orphaned(GameTreeNode child) {
+        if (child != root) {
+            garbage.add(child);
+        }
+    }
+
+    public static boolean isIdle() {
+        return garbage.isEmpty();
+    }
+
+    public static long GetReclaimed() {
+        return reclaimed.get();
+    }
+}
@@ -1,35 +1,32 @@
 package data.structures;
 
-import algorithms.search.MoveCompiler;
 import data.Move;
-import data.structures.GameState;
 
-import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * MovePool hands out one shared Move object per (start, next, arrow) combination.
+ * The pool is a flat array indexed directly by the packed move (see Move.Pack), filled lazily and safe to use from any thread.
+ */
 public class MovePool {
-    private static HashMap<Integer, Move> pool = new HashMap<>(1200000, 1.f);
+    private static final AtomicReferenceArray<Move> pool = new AtomicReferenceArray<>(1 << Move.packed_bits);
 
-    public static void generate_pool(){
-        int[] all_positions = MoveCompiler.GetAllValidPositions();
-        MoveCompiler.GetMoveList(new GameState(),all_positions,true);
+    public static Move get(int start, int next, int arrow) {
+        return get(Move.Pack(start, next, arrow));
     }
 
-    private static int make_key(int start, int next, int arrow){
-        final int bits = 8;
-        return (start << (bits << 1)) | (next << bits) | arrow;
-    }
-    
-    public static Move get(int start, int next, int arrow) {
-        int key = make_key(start, next, arrow);
-        Move move = pool.get(key);
+    public static Move get(int packed) {
+        Move move = pool.get(packed);
         if(move == null){
-            move = new Move(start,next,arrow);
-            pool.put(key,move);
+            move = new Move(Move.Start(packed), Move.Next(packed), Move.Arrow(packed));
+            if(!pool.compareAndSet(packed, null, move)){
+                move = pool.get(packed); // another thread got there first, everyone uses the same object
+            }
         }
         return move;
     }
 
     public static void put(int start, int next, int arrow, Move move) {
-        pool.put(make_key(start, next, arrow), move);
+        pool.set(Move.Pack(start, next, arrow), move);
     }
 }
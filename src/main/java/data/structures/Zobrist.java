@@ -0,0 +1,30 @@
+package data.structures;
+
+import tools.Tuner;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for GameState hashing.
+ * Every (tile, content) pair gets a random 64-bit key, a state's key is the xor of the keys for its contents
+ * (empty tiles contribute nothing) plus `side_key` when it is player 2's turn.
+ * Because xor undoes itself a move only has to toggle the handful of keys it changes.
+ */
+public class Zobrist {
+    private static final long[][] tile_keys = new long[Tuner.state_size][4];
+    public static final long side_key;
+
+    static {
+        SplittableRandom rng = new SplittableRandom(322); // fixed seed, so keys are the same every run
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            for (int content = 1; content < 4; ++content) {
+                tile_keys[tile][content] = rng.nextLong();
+            }
+        }
+        side_key = rng.nextLong();
+    }
+
+    public static long TileKey(int tile, int content) {
+        return tile_keys[tile][content];
+    }
+}
@@ -13,6 +13,53 @@ public class Maths {
         return Math.min(max,Math.max(min,v));
     }
 
+    /* Table driven curves, built once when the class loads.
+     * Powers of two with integer exponents are exact, the f1..f4 curves of w are sampled w_resolution times per unit of
+     * w over [0, w_max] (scale_w clamps everything above) and linearly interpolated, within 2e-7 of the formulas.
+     * */
+    private static final int pow2_limit = 128;
+    private static final double[] pow2_table = new double[2 * pow2_limit + 1];
+    private static final double w_max = 70;
+    private static final int w_resolution = 64;
+    private static final double[][] f_tables = new double[4][(int) w_max * w_resolution + 2];
+
+    static {
+        for (int e = -pow2_limit; e <= pow2_limit; ++e) {
+            pow2_table[e + pow2_limit] = Math.scalb(1.0, e);
+        }
+        for (int i = 0; i < f_tables[0].length; ++i) {
+            double w = (double) i / w_resolution;
+            f_tables[0][i] = f1_exact(w);
+            f_tables[1][i] = f2_exact(w);
+            f_tables[2][i] = f3_exact(w);
+            f_tables[3][i] = f4_exact(w);
+        }
+    }
+
+    // 2^e
+    public static double pow2(int e) {
+        if (e < -pow2_limit || e > pow2_limit) {
+            return Math.scalb(1.0, e);
+        }
+        return pow2_table[e + pow2_limit];
+    }
+
+    // 2^e, exact and from the table when e is a whole number (2^-infinity is 0)
+    public static double pow2(double e) {
+        int i = (int) e;
+        if (i == e) {
+            return pow2(i);
+        }
+        return Math.pow(2, e);
+    }
+
+    private static double lookup_w(double[] table, double w) {
+        double x = Math.min(w_max, Math.max(0, w)) * w_resolution;
+        int i = (int) x;
+        double frac = x - i;
+        return table[i] + frac * (table[i + 1] - table[i]);
+    }
+
     public static double scale_w(double w){
         if(w<=70) {
             return w / 70;
@@ -20,17 +67,29 @@ public class Maths {
         return 1;
     }
     public static double f1(double w) {
-        w = scale_w(w);
-        w = 0 - ((1-0.25+0.001)/(1-w+(1-0.25+0.001))) + 1;
-        return w;
+        return lookup_w(f_tables[0], w);
     }
     public static double f2(double w) {
-        return Math.max(0, Tuner.c1c * scale_w(w) * (1 - f1(w) - f4(w)));
+        return lookup_w(f_tables[1], w);
     }
     public static double f3(double w) {
-        return Math.max(0, Tuner.c2c * (1 - f1(w) - f2(w) - f4(w)));
+        return lookup_w(f_tables[2], w);
     }
     public static double f4(double w) {
+        return lookup_w(f_tables[3], w);
+    }
+    static double f1_exact(double w) {
+        w = scale_w(w);
+        w = 0 - ((1-0.25+0.001)/(1-w+(1-0.25+0.001))) + 1;
+        return w;
+    }
+    static double f2_exact(double w) {
+        return Math.max(0, Tuner.c1c * scale_w(w) * (1 - f1_exact(w) - f4_exact(w)));
+    }
+    static double f3_exact(double w) {
+        return Math.max(0, Tuner.c2c * (1 - f1_exact(w) - f2_exact(w) - f4_exact(w)));
+    }
+    static double f4_exact(double w) {
         w = scale_w(w);
         return Tuner.t2c * Math.pow(w, Tuner.t2p);
     }
@@ -12,6 +12,11 @@ import java.util.Random;
 import java.util.stream.Collectors;
 
 public class RandomGen extends Random {
+    // java.util.Random's generator, kept in a plain field instead of an AtomicLong, so each thread needs its own RandomGen
+    private static final long multiplier = 0x5DEECE66DL;
+    private static final long addend = 0xBL;
+    private static final long mask = (1L << 48) - 1;
+    private long seed; // no initializer, Random's constructor seeds it before this class's fields are set
 
     public RandomGen(){}
 
@@ -19,6 +24,18 @@ public class RandomGen extends Random {
         setSeed(seed);
     }
 
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        this.seed = (seed ^ multiplier) & mask;
+    }
+
+    @Override
+    protected int next(int bits) {
+        seed = (seed * multiplier + addend) & mask;
+        return (int) (seed >>> (48 - bits));
+    }
+
     public List<Integer> DEPRECATED_GetDistinctSequenceShuffled(int min, int max, int N){
         assert (++max-min) >= N;
         return ints(min,max).distinct()
@@ -0,0 +1,137 @@
+package tools;
+
+import java.util.function.LongSupplier;
+
+/**
+ * TimeManager decides how long we think about each move, out of a clock budget for the whole game.
+ * Each move gets a target: the budget left, shared over the moves we still expect to play, weighted by the phase of the
+ * game (the middle game gets the most). While the search runs, the root is sampled (ShouldStop) and the move ends:
+ *  - early, once the best move has held for a while with a clear lead, or can't be caught in the time left
+ *  - at the target, when the decision looks settled
+ *  - past the target, up to max_time_extension times it, while the best move keeps changing or the lead is close
+ * Nothing is allowed past the server's clock for one move, or past what the later moves need at the least.
+ */
+public class TimeManager {
+    private static final int max_moves = 92; // an arrow fills a tile every move, 100 tiles less 8 queens
+
+    private final LongSupplier clock; // milliseconds
+    private long budget;
+    // the current move
+    private long start;
+    private long target;
+    private long limit;
+    private long ceiling; // the latest the move may be sent
+    private int best_move;
+    private long best_since;
+    private long first_visits;
+    private long used; // by the last move that ended
+    private boolean thinking = false;
+
+    public TimeManager(long game_budget) {
+        this(game_budget, () -> System.nanoTime() / 1000000);
+    }
+
+    public TimeManager(long game_budget, LongSupplier clock) {
+        this.budget = game_budget;
+        this.clock = clock;
+    }
+
+    // starts our clock for the move, `move_number` is the board's
+    public synchronized void StartMove(int move_number) {
+        start = clock.getAsLong();
+        int moves_left = Math.max(Tuner.min_moves_to_plan, (max_moves - move_number + 1) / 2);
+        // the later moves keep at least their minimum
+        long spendable = budget - (long) Tuner.min_move_time * (moves_left - 1);
+        long server_limit = Tuner.move_time_limit - Tuner.move_time_safety;
+        ceiling = Math.max(Tuner.min_move_time, Math.min(server_limit, spendable));
+        target = Math.min(ceiling, Math.max(Tuner.min_move_time, (long) (budget / (double) moves_left * PhaseWeight(move_number))));
+        limit = Math.min(ceiling, (long) (target * Tuner.max_time_extension));
+        best_move = -1;
+        best_since = 0;
+        first_visits = -1;
+        thinking = true;
+    }
+
+    /* Samples the root and returns true once we should stop thinking.
+     * `best_move` is the most visited root move (packed, -1 if there isn't one), `runner_up` the second highest visit
+     * count, `total` the visits over every root move. `solved` ends the move straight away.
+     * */
+    public synchronized boolean ShouldStop(int best_move, long best_visits, long runner_up, long total, boolean solved) {
+        long elapsed = Elapsed();
+        if (solved || elapsed >= limit) {
+            return true;
+        }
+        if (first_visits < 0) {
+            first_visits = total;
+        }
+        if (best_move != this.best_move) {
+            this.best_move = best_move;
+            best_since = elapsed;
+        }
+        if (best_move < 0 || total == 0) {
+            return elapsed >= target; // nothing to judge the decision by
+        }
+        boolean stable = elapsed - best_since >= target * Tuner.stable_fraction;
+        if (elapsed >= target * Tuner.min_think_fraction) {
+            // even if every visit left went to the runner up, it couldn't catch up
+            double rate = (total - first_visits) / (double) Math.max(1, elapsed);
+            if (best_visits - runner_up > rate * (limit - elapsed)) {
+                return true;
+            }
+            if (stable && best_visits >= Tuner.clear_margin * runner_up) {
+                return true;
+            }
+        }
+        if (elapsed >= target) {
+            boolean close = best_visits < Tuner.close_margin * runner_up;
+            return stable && !close;
+        }
+        return false;
+    }
+
+    // charges the time the move took to the budget
+    public synchronized void EndMove() {
+        if (thinking) {
+            used = Elapsed();
+            budget -= used;
+            thinking = false;
+        }
+    }
+
+    public synchronized long Elapsed() {
+        return clock.getAsLong() - start;
+    }
+
+    // milliseconds until the latest we may still send this move, choosing it can use what thinking left over
+    public synchronized long Remaining() {
+        return ceiling - Elapsed();
+    }
+
+    public synchronized long GetTarget() {
+        return target;
+    }
+
+    public synchronized long GetLimit() {
+        return limit;
+    }
+
+    public synchronized long GetBudget() {
+        return budget;
+    }
+
+    public synchronized String Stats() {
+        long thought = thinking ? Elapsed() : used;
+        return String.format("time manager: thought %d ms (target %d, limit %d), %d ms left in the game", thought, target, limit, budget - (thinking ? thought : 0));
+    }
+
+    // the opening is mostly book-like and the endgame gets solved, the middle game decides it
+    private static double PhaseWeight(int move_number) {
+        double p = Math.min(1.0, move_number / (double) max_moves);
+        if (p < 0.2) {
+            return Maths.lerp(0.6, 1.4, p / 0.2);
+        } else if (p < 0.5) {
+            return 1.4;
+        }
+        return Maths.lerp(1.4, 0.6, (p - 0.5) / 0.5);
+    }
+}
@@ -18,11 +18,49 @@ public class Tuner {
     public static final boolean use_amazongs_heuristic = true;
     public static final boolean use_mobility_heuristic = true;
     public static final boolean use_territory_heuristic = true;
-    public static final int send_delay = 1000 * 15;
-    public static final int max_wait_time = 1000 * 5;
+    public static final boolean use_incremental_amazongs = true; // see Amazongs.distance_mode
+    public static final boolean use_packed_scoring = !Boolean.getBoolean("scalar_scoring"); // see PackedScoring.mode, -Dscalar_scoring=true for the old loops
+    // see TimeManager, the budgets can be set at startup with -Dgame_time_budget=N and -Dmove_time_limit=N (ms)
+    public static final int game_time_budget = Integer.getInteger("game_time_budget", 1000 * 60 * 15); // our thinking time for the whole game
+    public static final int move_time_limit = Integer.getInteger("move_time_limit", 1000 * 30); // the server's clock for one move
+    public static final int move_time_safety = 1000 * 3; // kept back from the server's clock for latency and sending the move
+    public static final int min_move_time = 1000;
+    public static final int min_moves_to_plan = 10; // the budget is never spread over fewer of our moves than this
+    public static final double max_time_extension = 2.5; // hard moves may think this many times their target
+    public static final double min_think_fraction = 0.25; // of the target, before any early stop
+    public static final double stable_fraction = 0.3; // of the target, how long the best move must hold to stop early
+    public static final double clear_margin = 2.0; // best move visits over the runner up's that count as a clear decision
+    public static final double close_margin = 1.2; // below this the decision is close and worth extending
+    public static final int time_poll_interval = 100;
 
-    public static final int montecarlo_breadth_top = 10;
-    public static final int montecarlo_breadth_bottom = 1;
+    public static final int game_tree_capacity = 1 << 20; // transposition table entries, rounded down to a power of two
+    public static final int game_tree_memory_mb = Integer.getInteger("game_tree_memory_mb", 2048); // set at startup with -Dgame_tree_memory_mb=N
+    public static final double eviction_target = 0.75; // fraction of the budget we evict down to
+    public static final int eviction_interval = 500;
+    public static final int reclaim_batch = 1024; // nodes GameTreeReclaimer frees before yielding to the searches
+    public static final int reclaim_interval = 20;
+
+    public static final int search_threads = Integer.getInteger("search_threads", Runtime.getRuntime().availableProcessors());
+    public static final int evaluation_threads = Integer.getInteger("evaluation_threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)); // HeuristicsQueue workers, when use_heuristic_queue is on
+    public static final boolean root_parallel = Boolean.getBoolean("root_parallel"); // otherwise every thread searches the shared tree
+    public static final boolean use_virtual_loss = true; // only used by the shared tree
+    public static final boolean use_alpha_beta = true; // otherwise the exhaustive search thread runs BreadthFirst
+    public static final int alpha_beta_table_size = 1 << 18;
+    public static final int region_solver_min_arrows = 20; // the region solver isn't tried on emptier boards
+    public static final int region_solver_budget = 200_000; // search nodes per region before giving up on the position a search starts from
+    public static final int region_solver_search_budget = 2_000; // the same inside a search, where it's paid at every leaf
+    public static final int region_cache_size = 1 << 20;
+    public static final int region_failed_cache_size = 1 << 16; // regions that ran out of budget
+    public static final int montecarlo_batch = 256; // iterations per RunSimulation call
+    public static final boolean use_pondering = !Boolean.getBoolean("no_ponder"); // search the opponent's likely replies on their time, see Ponder
+    public static final int ponder_replies = 4;
+    public static final double ponder_root_share = 0.25; // of the batches, searched from the root so other replies still get tried
+    public static final double uct_exploration = 0.7;
+    public static final double uct_exploration_wide = 1.4;
+    public static final double widening_c = 2.0;
+    public static final double widening_exp = 0.5;
+    public static final int playouts_per_leaf = 1;
+    public static final double playout_epsilon = 0.3;
 
     public static final int coord_min = 0;
     public static final int coord_max = 9;
@@ -52,9 +90,9 @@ public class Tuner {
 
     public static double get_aggregate_base(Heuristic h){
         if(Tuner.use_winner_aggregate && !Tuner.use_winner_heuristic) {
-            return h.winner.get();
+            return h.winner;
         } else {
-            return h.value.get();
+            return h.value;
         }
     }
 }
@@ -1,44 +1,51 @@
 package ubc.cosc322;
 
+import algorithms.search.AlphaBeta;
 import algorithms.search.BreadthFirst;
 import algorithms.search.MoveCompiler;
 import algorithms.analysis.HeuristicsQueue;
 import algorithms.search.MonteCarlo;
+import algorithms.search.Ponder;
 import data.*;
 import data.structures.GameState;
 import data.structures.GameTree;
+import data.structures.GameTreeEvictor;
 import data.structures.GameTreeNode;
+import data.structures.GameTreeReclaimer;
 import data.structures.MovePool;
-import tools.Benchmarker;
 import tools.Debug;
 import tools.RandomGen;
+import tools.TimeManager;
 import tools.Tuner;
 import ygraph.ai.smartfox.games.BaseGameGUI;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class AICore {
     private static GameState current_board_state = null;
     private static AIPlayer player = null;
-    private static Thread search_thread0 = null;
-    private static Thread search_thread1 = null;
-    private static Thread search_thread2 = null;
-    private static Thread heuristics_thread = null;
+    private static Thread[] search_threads = new Thread[0];
+    // root parallel mode: each Monte Carlo thread searches its own tree, indexed by thread
+    private static final AtomicReferenceArray<GameTreeNode> search_roots = new AtomicReferenceArray<>(Math.max(1, Tuner.search_threads));
+    private static Thread eviction_thread = null;
+    private static Thread reclaimer_thread = null;
     private static Thread move_sender_orphan = null;
     private static final AtomicBoolean threads_terminating = new AtomicBoolean(false);
     private static final AtomicBoolean game_tree_is_explored = new AtomicBoolean(false);
-    private static final AtomicBoolean is_searching = new AtomicBoolean(false);
     private static AtomicReference<GameTreeNode> root = new AtomicReference<>();
+    private static final AlphaBeta alpha_beta = new AlphaBeta(); // only searched by the exhaustive search thread
+    private static volatile TimeManager clock = new TimeManager(Tuner.game_time_budget); // a new one every game
 
     public static void main(String[] args) {
         try {
             assert Tuner.use_amazongs_heuristic || Tuner.use_winner_heuristic || Tuner.use_territory_heuristic || Tuner.use_mobility_heuristic;
-            MovePool.generate_pool();
             RandomGen rng = new RandomGen();
             player = new AIPlayer("coopstar" + rng.nextInt(4488), "secure_password");
             BaseGameGUI.sys_setup();
@@ -47,11 +54,7 @@ public class AICore {
                     player.Go();
                 }
             });
-            search_thread0 = Thread.currentThread();
             while(player.isRunning()){
-                if(is_searching.get()){
-                    MonteCarloTreeSearch_breadthfirst();
-                }
                 try {
                     Thread.sleep(2500);
                 } catch (Exception e){}
@@ -63,73 +66,102 @@ public class AICore {
 
     public static void TerminateThreads() {
         threads_terminating.set(true);
-        if (search_thread0 != null && search_thread0.isAlive()) {
-            search_thread0.interrupt();
+        for (Thread thread : search_threads) {
+            if (thread.isAlive()) {
+                thread.interrupt();
+            }
         }
-        if (search_thread1 != null && search_thread1.isAlive()) {
-            search_thread1.interrupt();
+        if(Tuner.use_heuristic_queue) {
+            HeuristicsQueue.Stop();
         }
-        if (search_thread2 != null && search_thread2.isAlive()) {
-            search_thread2.interrupt();
+        if (eviction_thread != null && eviction_thread.isAlive()) {
+            eviction_thread.interrupt();
         }
-        if(Tuner.use_heuristic_queue) {
-            if (heuristics_thread != null && heuristics_thread.isAlive()) {
-                heuristics_thread.interrupt();
-            }
+        if (reclaimer_thread != null && reclaimer_thread.isAlive()) {
+            reclaimer_thread.interrupt();
         }
         if (move_sender_orphan != null && move_sender_orphan.isAlive()) {
             move_sender_orphan.interrupt();
         }
         try {
-            while (
-                    (search_thread1 != null && search_thread1.isAlive())
-                    || (search_thread2 != null && search_thread2.isAlive())
-                    || (heuristics_thread != null && heuristics_thread.isAlive())
-            ) {
+            for (Thread thread : search_threads) {
+                thread.join();
+            }
+            while (eviction_thread != null && eviction_thread.isAlive()) {
                 Thread.sleep(100);
             }
-            search_thread1 = null;
-            search_thread2 = null;
-            heuristics_thread = null;
+            if (reclaimer_thread != null) {
+                reclaimer_thread.join();
+            }
+            search_threads = new Thread[0];
+            for (int i = 0; i < search_roots.length(); ++i) {
+                search_roots.set(i, null);
+            }
+            eviction_thread = null;
+            reclaimer_thread = null;
         } catch (Exception e) {
             e.printStackTrace();
         }
         threads_terminating.set(false);
-        is_searching.set(false);
     }
 
     public static void InterruptSimulations(){
-        search_thread0.interrupt();
-        search_thread1.interrupt();
-        search_thread2.interrupt();
+        for (Thread thread : search_threads) {
+            thread.interrupt();
+        }
     }
 
+    /* Starts Tuner.search_threads search threads (one per core by default).
+     * With more than one thread, the first runs the exhaustive search and the rest run Monte Carlo,
+     * alternating between the wide and narrow exploration settings.
+     * */
     public static void LaunchThreads(){
-        if(search_thread1 != null && search_thread1.isAlive() && !search_thread1.isInterrupted()){
-            search_thread1.interrupt();
+        for (Thread thread : search_threads) {
+            if (thread.isAlive() && !thread.isInterrupted()) {
+                thread.interrupt();
+            }
         }
-        if(search_thread2 != null && search_thread2.isAlive() && !search_thread2.isInterrupted()){
-            search_thread2.interrupt();
+        int thread_count = Math.max(1, Tuner.search_threads);
+        Thread[] threads = new Thread[thread_count];
+        for (int i = 0; i < thread_count; ++i) {
+            final int id = i;
+            if (i == 0 && thread_count > 1) {
+                threads[i] = new Thread(AICore::ExhaustiveSearch, "search-exhaustive");
+            } else {
+                threads[i] = new Thread(() -> MonteCarloTreeSearch(id), "search-montecarlo-" + id);
+            }
         }
-        search_thread1 = new Thread(AICore::ExhaustiveSearch);
-        search_thread2 = new Thread(AICore::MonteCarloTreeSearch_depthfirst);
+        search_threads = threads;
         if(Tuner.use_heuristic_queue) {
-            if (heuristics_thread == null) {
-                heuristics_thread = new Thread(HeuristicsQueue::ProcessQueue);
-                heuristics_thread.start();
-            }
+            HeuristicsQueue.Start();
+        }
+
+        if (eviction_thread == null) {
+            eviction_thread = new Thread(() -> GameTreeEvictor.Run(AICore::GetSearchRoots));
+            eviction_thread.start();
+        }
+        if (reclaimer_thread == null) {
+            reclaimer_thread = new Thread(GameTreeReclaimer::Run, "tree-reclaimer");
+            reclaimer_thread.setPriority(Thread.MIN_PRIORITY);
+            reclaimer_thread.start();
         }
 
-        search_thread1.start();
-        search_thread2.start();
-        is_searching.set(true);
+        for (Thread thread : threads) {
+            thread.start();
+        }
     }
 
     private static void ExhaustiveSearch() {
         Debug.PrintThreadID("ExhaustiveSearch");
         GameState copy = GetStateCopy();
         while (!game_tree_is_explored.get() && copy.CanGameContinue() && !threads_terminating.get()) {
-            if(BreadthFirst.ExploreGameTree(copy)){
+            if (Tuner.use_alpha_beta) {
+                if (alpha_beta.Search(copy)) {
+                    Debug.RunInfoL1DebugCode(() -> System.out.println("\nALPHA BETA SOLVED THE POSITION.\n"));
+                    WaitForNextMove(copy);
+                }
+                Thread.interrupted(); // interrupts only mean the position changed
+            } else if(BreadthFirst.ExploreGameTree(copy)){
                 game_tree_is_explored.set(true);
                 System.out.println("\nGAME TREE IS NOW FULLY EXPLORED.\n");
                 return;
@@ -138,38 +170,72 @@ public class AICore {
         }
     }
 
-    private static void MonteCarloTreeSearch_depthfirst(){
-        Debug.PrintThreadID("MonteCarloSearch");
-        int branches = Tuner.montecarlo_breadth_bottom;
-        GameState copy = GetStateCopy();
-        while (!game_tree_is_explored.get() && copy.CanGameContinue() && !threads_terminating.get()) {
-            MonteCarlo.RunSimulation(copy, root.get(), false);
-            if(copy.GetMoveNumber() != GetState().GetMoveNumber()) {
-                copy = GetStateCopy();
+    // once a position is solved there is nothing left to search until someone moves
+    private static void WaitForNextMove(GameState board) {
+        try {
+            while (board.GetMoveNumber() == GetCurrentMoveNumber() && !threads_terminating.get()) {
+                Thread.sleep(100);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static void MonteCarloTreeSearch_breadthfirst(){
+    private static void MonteCarloTreeSearch(int id){
         Debug.PrintThreadID("MonteCarloSearch");
-        int branches = Tuner.montecarlo_breadth_top;
+        boolean breadth_first = id % 2 == 1;
+        RandomGen rng = new RandomGen();
         GameState copy = GetStateCopy();
         while (!game_tree_is_explored.get() && copy.CanGameContinue() && !threads_terminating.get()) {
-            MonteCarlo.RunSimulation(copy, root.get(), true);
+            if (Tuner.root_parallel) {
+                MonteCarlo.RunSimulation(copy, GetSearchRoot(id, copy), breadth_first, false);
+            } else {
+                GameTreeNode search_root = root.get();
+                if (Tuner.use_pondering && copy.GetPlayerTurn() != Tuner.our_player_num && search_root.state_after_move.get().equals(copy)) {
+                    // the opponent is thinking, so we think about their likeliest replies (see Ponder)
+                    search_root = Ponder.PickRoot(rng, search_root);
+                }
+                MonteCarlo.RunSimulation(search_root.state_after_move.get(), search_root, breadth_first, true);
+            }
             if(copy.GetMoveNumber() != GetState().GetMoveNumber()) {
                 copy = GetStateCopy();
             }
         }
     }
 
+    // every tree the searches are growing: the shared root, and in root parallel mode each thread's private root
+    private static List<GameTreeNode> GetSearchRoots() {
+        List<GameTreeNode> roots = new ArrayList<>();
+        GameTreeNode shared = root.get();
+        if (shared != null) {
+            roots.add(shared);
+        }
+        for (int i = 0; i < search_roots.length(); ++i) {
+            GameTreeNode search_root = search_roots.get(i);
+            if (search_root != null) {
+                roots.add(search_root);
+            }
+        }
+        return roots;
+    }
+
+    // returns thread `id`'s private root for `board`, starting a new tree whenever the position has moved on
+    private static GameTreeNode GetSearchRoot(int id, GameState board) {
+        GameTreeNode search_root = search_roots.get(id);
+        if (search_root == null || !search_root.state_after_move.get().equals(board)) {
+            search_root = new GameTreeNode(null, null, board);
+            search_roots.set(id, search_root);
+        }
+        return search_root;
+    }
+
     public static void SendDelayedMessage() {
         if(move_sender_orphan == null || !move_sender_orphan.isAlive()) {
             move_sender_orphan = new Thread(() -> {
                 try {
                     System.out.println("SendDelayedMessage: now waiting..");
-                    if (!game_tree_is_explored.get() || HeuristicsQueue.isProcessing()) {
-                        Thread.sleep(Tuner.send_delay);
-                    }
+                    clock.StartMove(GetCurrentMoveNumber());
+                    Think();
                     if (!Thread.currentThread().isInterrupted()) {
                         GameTreeNode node = GetBestNode();
                         Move move = null;
@@ -193,15 +259,19 @@ public class AICore {
                         }
                         if(!Thread.currentThread().isInterrupted()) {
                             current_board_state.MakeMove(move, true, true);
+                            PromoteRoot(move);
                             InterruptSimulations();
+                            HeuristicsQueue.CancelStale();
+                            Debug.RunInfoL1DebugCode(() -> System.out.println(HeuristicsQueue.Stats()));
                             var msg = MakeMessage(move);
                             player.makeMove(msg);
                             player.getGameClient().sendMoveMessage(msg);
                             System.out.println("Move sent to server.");
+                            clock.EndMove();
+                            Debug.RunInfoL1DebugCode(() -> System.out.println(clock.Stats()));
                             Debug.RunInfoL1DebugCode(()->{
                                 PrintChoice(node);
                             });
-                            PruneGameTree();
                         }
                     }
                 } catch (Exception e) {
@@ -214,14 +284,75 @@ public class AICore {
         }
     }
 
+    // lets the search run until the time manager is happy with the decision at the root
+    private static void Think() throws InterruptedException {
+        long[] sample = new long[4];
+        while (true) {
+            GameTreeNode root = AICore.root.get();
+            boolean solved = game_tree_is_explored.get() && !HeuristicsQueue.isProcessing();
+            if (root != null) {
+                solved |= alpha_beta.IsSolved(root.state_after_move.get());
+                SampleRoot(root, sample);
+            }
+            if (clock.ShouldStop((int) sample[0], sample[1], sample[2], sample[3], solved)) {
+                return;
+            }
+            Thread.sleep(Tuner.time_poll_interval);
+        }
+    }
+
+    /* Fills `sample` with {most visited move (packed, or -1), its visits, the runner up's visits, total visits} over the
+     * root's moves. In root parallel mode the visits are summed over the threads' private roots.
+     * */
+    private static void SampleRoot(GameTreeNode root, long[] sample) {
+        Map<Integer, Long> visits = new HashMap<>();
+        if (Tuner.root_parallel) {
+            GameState board = root.state_after_move.get();
+            for (int i = 0; i < search_roots.length(); ++i) {
+                GameTreeNode search_root = search_roots.get(i);
+                if (search_root != null && search_root.state_after_move.get().equals(board)) {
+                    CountVisits(search_root, visits);
+                }
+            }
+        } else {
+            CountVisits(root, visits);
+        }
+        sample[0] = -1;
+        sample[1] = 0;
+        sample[2] = 0;
+        sample[3] = 0;
+        for (Map.Entry<Integer, Long> entry : visits.entrySet()) {
+            long v = entry.getValue();
+            sample[3] += v;
+            if (v > sample[1]) {
+                sample[2] = sample[1];
+                sample[1] = v;
+                sample[0] = entry.getKey();
+            } else if (v > sample[2]) {
+                sample[2] = v;
+            }
+        }
+    }
+
+    private static void CountVisits(GameTreeNode root, Map<Integer, Long> visits) {
+        for (int i = 0; ; ++i) {
+            GameTreeNode child = root.try_get(i);
+            if (child == null) {
+                break;
+            }
+            Move move = child.move.get();
+            if (move != null && child.visits() > 0) {
+                visits.merge(move.Packed(), (long) child.visits(), Long::sum);
+            }
+        }
+    }
+
     private static GameTreeNode GetBestNode() throws Exception {
         double best_agg;
         double best_value;
         boolean first_pass = true;
         GameTreeNode best_node = null;
         int bad_loop_count = 0;
-        Benchmarker B = new Benchmarker();
-        B.Start();
         do {
             best_agg = Double.NEGATIVE_INFINITY;
             best_value = Double.NEGATIVE_INFINITY;
@@ -235,6 +366,13 @@ public class AICore {
                 Debug.NoParentNodeFound.set(true);
                 System.out.println("GetBestNode: GameTree can't find the state");
                 throw new IllegalStateException("There absolutely should be a root node, and we can't find it.");
+            } else if (alpha_beta.IsSolved(root.state_after_move.get())
+                    && (best_node = GetChildNode(root, alpha_beta.GetBestMove(root.state_after_move.get()))) != null) {
+                System.out.println("GetBestNode: found one (solved by alpha beta)");
+                return best_node;
+            } else if (Tuner.root_parallel && (best_node = GetMergedRootNode(root)) != null) {
+                System.out.println("GetBestNode: found one (merged root statistics)");
+                return best_node;
             } else if (root.edges() == 0) {
                 Debug.ZeroEdgesDetected.set(true);
                 System.out.println("GetBestNode: Zero edges");
@@ -243,10 +381,20 @@ public class AICore {
                                 "[game can continue: %B]", GetState().CanGameContinue()));
             } else {
                 Debug.RunInfoL2DebugCode(() -> System.out.printf("GetBestNode: our root node has %d edges, now to find the best edge\n", root.edges()));
+                GameTreeNode most_visited = GetMostVisitedNode(root);
+                if (most_visited != null) {
+                    System.out.println("GetBestNode: found one (most visited)");
+                    return most_visited;
+                }
+                best_node = GetChildNode(root, alpha_beta.GetBestMove(root.state_after_move.get()));
+                if (best_node != null) {
+                    System.out.println("GetBestNode: found one (alpha beta)");
+                    return best_node;
+                }
                 for (int i = 0; i < root.edges(); ++i) {
                     final int edge = i;
                     GameTreeNode sub_node = root.get(i);
-                    if (!sub_node.heuristic.is_ready.get() && B.Elapsed() < Tuner.max_wait_time) {
+                    if (!sub_node.heuristic.has(Heuristic.is_ready) && clock.Remaining() > 0) {
                         Debug.RunVerboseL1DebugCode(() -> System.out.printf("GetBestNode: node not ready. [Node: %s]\n", sub_node));
                         HeuristicsQueue.CalculateHeuristicsAll(sub_node.state_after_move.get(), sub_node, true);
                     }
@@ -255,11 +403,11 @@ public class AICore {
                     // need to check if this node is better than previous nodes
                     double heuristic = Double.NEGATIVE_INFINITY;
                     double aggregate = Double.NEGATIVE_INFINITY;
-                    if (Tuner.find_best_aggregate && sub_node.heuristic.has_aggregated.get()) {
-                        aggregate = sub_node.heuristic.aggregate_avg.get();
+                    if (Tuner.find_best_aggregate && sub_node.heuristic.has(Heuristic.has_aggregated)) {
+                        aggregate = sub_node.heuristic.aggregate_avg;
                     }
-                    if(sub_node.heuristic.is_ready.get()) {
-                        heuristic = sub_node.heuristic.value.get();
+                    if(sub_node.heuristic.has(Heuristic.is_ready)) {
+                        heuristic = sub_node.heuristic.value;
                     }
 
                     if((heuristic > 0 || !first_pass) && heuristic >= best_value && aggregate >= best_agg) {
@@ -268,7 +416,7 @@ public class AICore {
                         best_agg = aggregate;
                         best_node = sub_node;
                     }
-                    if(B.Elapsed() >= Tuner.max_wait_time){
+                    if(clock.Remaining() <= 0){
                         break;
                     }
                 }
@@ -281,10 +429,67 @@ public class AICore {
                 }
             }
             first_pass = false;
-        } while (B.Elapsed() < Tuner.max_wait_time);
+        } while (clock.Remaining() > 0);
         return null;
     }
 
+    // the search statistics are the most reliable measure we have once the Monte Carlo search has visited the root's edges
+    private static GameTreeNode GetMostVisitedNode(GameTreeNode root) {
+        GameTreeNode best_node = null;
+        for (int i = 0; i < root.edges(); ++i) {
+            GameTreeNode sub_node = root.get(i);
+            if (sub_node.visits() == 0) {
+                continue;
+            }
+            if (best_node == null || sub_node.visits() > best_node.visits()
+                    || (sub_node.visits() == best_node.visits() && sub_node.mean_reward() > best_node.mean_reward())) {
+                best_node = sub_node;
+            }
+        }
+        return best_node;
+    }
+
+    // root parallel mode: merges the threads' private roots, and returns the shared root's child for the chosen move
+    private static GameTreeNode GetMergedRootNode(GameTreeNode root) {
+        GameState board = root.state_after_move.get();
+        List<GameTreeNode> roots = new ArrayList<>();
+        for (int i = 0; i < search_roots.length(); ++i) {
+            GameTreeNode search_root = search_roots.get(i);
+            if (search_root != null && search_root.state_after_move.get().equals(board)) {
+                roots.add(search_root);
+            }
+        }
+        int packed = MonteCarlo.MergeRoots(roots);
+        if (packed < 0) {
+            return null;
+        }
+        return GetChildNode(root, packed);
+    }
+
+    // returns the root's child for the packed move, adding it to the tree if it doesn't exist yet, null if the move is illegal
+    private static GameTreeNode GetChildNode(GameTreeNode root, int packed) {
+        if (packed < 0) {
+            return null;
+        }
+        GameTreeNode sub_node = root.find_child(packed);
+        if (sub_node != null) {
+            return sub_node;
+        }
+        Move move = MovePool.get(packed);
+        GameState copy = new GameState(root.state_after_move.get());
+        if (!copy.MakeMove(move, true, false)) {
+            return null; // not a legal move here, the caller falls back to its next choice
+        }
+        sub_node = GameTree.get(copy);
+        if (sub_node == null) {
+            sub_node = new GameTreeNode(move, root, copy);
+            GameTree.put(sub_node);
+        } else {
+            root.adopt(sub_node, packed);
+        }
+        return sub_node;
+    }
+
     private static Map<String, Object> MakeMessage(Move move) {
         if (move != null) {
             Position start = new Position(move.start);
@@ -303,25 +508,20 @@ public class AICore {
         return null;
     }
 
-    public static void PruneGameTree() {
-        int prev_turn_num = GetState().GetMoveNumber() - 2;
-        GameTree.prune(prev_turn_num);
-    }
-
     public static synchronized int GetCurrentMoveNumber(){
         return current_board_state.GetMoveNumber();
     }
 
     public static synchronized void SetState(GameState board){
-        current_board_state = board;
-        root.set(new GameTreeNode(null,null, current_board_state));
+        current_board_state = new GameState(board); // the caller keeps theirs, the board we play on is ours alone
+        NewGameRoot();
         game_tree_is_explored.set(false);
         current_board_state.DebugPrint();
     }
 
     public static synchronized void SetState(ArrayList<Integer> state) {
-        current_board_state = new GameState(state, true, false); // saves state reference instead of copying
-        root.set(new GameTreeNode(null,null, current_board_state));
+        current_board_state = new GameState(state, true, false);
+        NewGameRoot();
         game_tree_is_explored.set(false);
         current_board_state.DebugPrint();
     }
@@ -337,7 +537,6 @@ public class AICore {
                 p1.CalculateIndex(),
                 p2.CalculateIndex(),
                 p3.CalculateIndex());
-        GameTreeNode parent = root.get();
         if(!current_board_state.MakeMove(move, true, false)){
             current_board_state.DebugPrint();
             System.out.println("ILLEGAL MOVE");
@@ -346,22 +545,45 @@ public class AICore {
             player.kill();
             System.exit(1);
         }
-        GameState copy = GetStateCopy();
-        GameTreeNode child = GameTree.get(copy);
-        if(child == null){
-            //we copy the state, because it's going to change.. and we don't want to invalidate the key we use in the hash map (game tree)
+        HeuristicsQueue.CancelStale();
+        GameTreeNode child = PromoteRoot(move);
+        Debug.RunInfoL1DebugCode(() -> System.out.printf("UpdateState: the opponent's move was searched %d times before it arrived\n", child.visits()));
+        Debug.RunInfoL1DebugCode(()->{
+            if(!child.heuristic.has(Heuristic.is_ready)){
+                HeuristicsQueue.CalculateHeuristicsAll(child.state_after_move.get(), child, true);
+            }
+            PrintChoice(child);
+        });
+    }
+
+    /* Makes the node for `move` (just played on current_board_state) the root, keeping the search below it.
+     * The rest of the old tree is reclaimed in the background (see GameTreeReclaimer).
+     * */
+    private static synchronized GameTreeNode PromoteRoot(Move move) {
+        GameTreeNode parent = root.get();
+        GameTreeNode child = null;
+        if (parent != null && parent.state_after_move.get().GetMoveNumber() + 1 == current_board_state.GetMoveNumber()) {
+            child = GetChildNode(parent, move.Packed());
+        }
+        if (child == null || !child.state_after_move.get().equals(current_board_state)) {
+            // we lost track of the root somehow, start over from the board
             System.out.println("New Move.. updating game tree now.");
-            child = new GameTreeNode(move,parent,copy);
+            child = new GameTreeNode(move, null, GetStateCopy());
             GameTree.put(child);
         }
+        Debug.RunInfoL1DebugCode(() -> System.out.printf("PromoteRoot: %d nodes reclaimed so far\n", GameTreeReclaimer.GetReclaimed()));
+        GameTreeReclaimer.Promote(parent, child);
         root.set(child);
-        GameTreeNode finalChild = child;
-        Debug.RunInfoL1DebugCode(()->{
-            if(!finalChild.heuristic.is_ready.get()){
-                HeuristicsQueue.CalculateHeuristicsAll(copy, finalChild, true);
-            }
-            PrintChoice(finalChild);
-        });
+        return child;
+    }
+
+    // a new board, nothing in the old tree is any use now
+    private static void NewGameRoot() {
+        GameTreeNode new_root = new GameTreeNode(null, null, new GameState(current_board_state)); // the root's state must not move with the board
+        GameTree.reset();
+        GameTreeReclaimer.Promote(root.get(), new_root);
+        root.set(new_root);
+        clock = new TimeManager(Tuner.game_time_budget);
     }
 
     private static void PrintChoice(GameTreeNode node){
@@ -64,7 +64,6 @@ public class AIPlayer extends GamePlayer{
 			AICore.InterruptSimulations();
 			// open up a thread to send a delayed message
 			AICore.SendDelayedMessage();
-			AICore.PruneGameTree(); // last thing for this thread to do is clean up the Game Tree
 
 		} else if (messageType.equals(GameMessage.GAME_STATE_BOARD)) {
 			ArrayList<Integer> state = (ArrayList<Integer>) msgDetails.get("game-state");
@@ -0,0 +1,126 @@
+package algorithms.analysis;
+
+import algorithms.search.BreadthFirst;
+import algorithms.search.MoveCompiler;
+import data.Heuristic;
+import data.Move;
+import data.structures.GameState;
+import data.structures.GameTree;
+import data.structures.GameTreeNode;
+import data.structures.MovePool;
+import org.junit.jupiter.api.Test;
+import tools.RandomPositions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchEvaluatorTester {
+    @Test
+    void territory_from_fields_matches_search() {
+        Random rng = new Random(22);
+        for (int game = 0; game < 10; ++game) {
+            GameState board = new GameState();
+            while (board.CanGameContinue()) {
+                assertEquals(Territory.CalculateHeuristic(board), Territory.CalculateHeuristic(board, DistanceFields.Get(board)));
+                RandomPositions.PlayMove(rng, board);
+            }
+        }
+    }
+
+    @Test
+    void batch_matches_single_evaluations() {
+        Random rng = new Random(2022);
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        GameState board = new GameState();
+        while (board.CanGameContinue()) {
+            int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+            ArrayList<GameTreeNode> batch = new ArrayList<>();
+            ArrayList<GameTreeNode> single = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                batch.add(Child(board, buffer[i]));
+                single.add(Child(board, buffer[i]));
+            }
+            BatchEvaluator.Evaluate(batch, true);
+            for (int i = 0; i < count; ++i) {
+                GameTreeNode node = single.get(i);
+                HeuristicsQueue.CalculateHeuristicsAll(node.state_after_move.get(), node, true);
+                Heuristic expected = node.heuristic;
+                Heuristic actual = batch.get(i).heuristic;
+                assertTrue(actual.has(Heuristic.is_ready));
+                assertEquals(expected.winner, actual.winner);
+                assertEquals(expected.mobility, actual.mobility);
+                assertEquals(expected.territory, actual.territory);
+                assertEquals(expected.amazongs, actual.amazongs);
+                assertEquals(expected.value, actual.value);
+                assertEquals(expected.aggregate, actual.aggregate);
+            }
+            board.MakeMove(MovePool.get(buffer[rng.nextInt(count)]), true, false);
+        }
+    }
+
+    @Test
+    void siblings_share_one_parents_fields() {
+        GameState board = RandomPositions.Play(new Random(2222), 20);
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+        ArrayList<GameTreeNode> batch = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            batch.add(Child(board, buffer[i]));
+        }
+        DistanceFields fields = DistanceFields.Get(board);
+        BatchEvaluator.Evaluate(batch, true);
+        // siblings that rebuilt the parent instead of repairing from it would have claimed the parent's slot
+        assertSame(fields, DistanceFields.Get(board));
+        assertEquals(board.GetZobristKey(), fields.key);
+    }
+
+    @Test
+    void breadth_first_evaluates_every_node_it_links() {
+        GameState board = RandomPositions.Play(new Random(22), 64); // a few moves from the end, so the whole tree is explored
+        assertTrue(board.CanGameContinue());
+        assertTrue(BreadthFirst.ExploreGameTree(board));
+        GameTreeNode root = GameTree.get(board);
+        List<GameTreeNode> nodes = Reachable(root);
+        assertTrue(nodes.size() > 1);
+        for (GameTreeNode node : nodes) {
+            if (node != root) {
+                assertTrue(node.heuristic.has(Heuristic.is_ready));
+            }
+            // full buckets can lose entries, but whatever the table hands out has been evaluated
+            GameTreeNode found = GameTree.get(node.state_after_move.get());
+            assertTrue(found == null || found == root || found.heuristic.has(Heuristic.is_ready));
+        }
+        for (GameTreeNode node : nodes) {
+            GameTree.remove(node);
+        }
+    }
+
+    private static List<GameTreeNode> Reachable(GameTreeNode root) {
+        Set<GameTreeNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<GameTreeNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        seen.add(root);
+        for (int i = 0; i < nodes.size(); ++i) {
+            GameTreeNode child;
+            for (int j = 0; (child = nodes.get(i).try_get(j)) != null; ++j) {
+                if (seen.add(child)) {
+                    nodes.add(child);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static GameTreeNode Child(GameState board, int packed) {
+        Move move = MovePool.get(packed);
+        GameState child = new GameState(board);
+        child.MakeMove(move, true, false);
+        return new GameTreeNode(move, null, child);
+    }
+}
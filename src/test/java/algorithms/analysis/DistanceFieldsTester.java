@@ -0,0 +1,70 @@
+package algorithms.analysis;
+
+import algorithms.search.MoveCompiler;
+import data.structures.GameState;
+import data.structures.MovePool;
+import org.junit.jupiter.api.Test;
+import tools.RandomPositions;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistanceFieldsTester {
+    @Test
+    void incremental_matches_full() {
+        Random rng = new Random(322);
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        for (int game = 0; game < 20; ++game) {
+            GameState board = new GameState();
+            while (board.CanGameContinue()) {
+                int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+                // a few siblings, so some are repaired from a cached parent
+                for (int i = 0; i < 3; ++i) {
+                    GameState child = new GameState(board);
+                    child.MakeMove(MovePool.get(buffer[rng.nextInt(count)]), true, false);
+                    AssertSameDistances(child);
+                }
+                board.MakeMove(MovePool.get(buffer[rng.nextInt(count)]), true, false);
+                AssertSameDistances(board);
+                assertEquals(Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.FULL),
+                        Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.INCREMENTAL), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void siblings_repair_from_one_parent() {
+        GameState parent = RandomPositions.Play(new Random(13), 20);
+        DistanceFields fields = DistanceFields.Get(parent);
+        for (GameState child : RandomPositions.Children(parent)) {
+            AssertSameDistances(child);
+            // a child that rebuilt its parent instead of repairing from it would soon claim the parent's slot
+            assertSame(fields, DistanceFields.Get(parent));
+            assertEquals(parent.GetZobristKey(), fields.key);
+        }
+    }
+
+    private static void AssertSameDistances(GameState board) {
+        Amazongs.UberDistanceData full = Amazongs.calculate_all_distances(board);
+        Amazongs.UberDistanceData incremental = Amazongs.incremental_distances(board);
+        AssertSamePieces(full.p1, incremental.p1);
+        AssertSamePieces(full.p2, incremental.p2);
+    }
+
+    // the two modes may list the pieces in a different order
+    private static void AssertSamePieces(Amazongs.DistanceData[] expected, Amazongs.DistanceData[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (Amazongs.DistanceData e : expected) {
+            boolean found = false;
+            for (Amazongs.DistanceData a : actual) {
+                if (Arrays.equals(e.queen_distances, a.queen_distances) && Arrays.equals(e.king_distances, a.king_distances)) {
+                    found = true;
+                    break;
+                }
+            }
+            assertTrue(found);
+        }
+    }
+}
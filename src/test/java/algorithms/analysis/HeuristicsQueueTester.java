@@ -0,0 +1,62 @@
+package algorithms.analysis;
+
+import algorithms.search.MoveCompiler;
+import data.Heuristic;
+import data.structures.GameState;
+import data.structures.GameTreeNode;
+import data.structures.MovePool;
+import org.junit.jupiter.api.Test;
+import ubc.cosc322.AICore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeuristicsQueueTester {
+    @Test
+    void evaluates_and_cancels() throws InterruptedException {
+        GameState board = new GameState();
+        AICore.SetState(board);
+        GameTreeNode root = new GameTreeNode(null, null, board);
+        int[] moves = MoveCompiler.NewMoveBuffer();
+        int count = Math.min(200, MoveCompiler.GetMoves(board, board.GetTurnPieces(), moves));
+        GameTreeNode[] children = new GameTreeNode[count];
+        for (int i = 0; i < count; ++i) {
+            GameState copy = new GameState(board);
+            copy.MakeMove(MovePool.get(moves[i]), true, false);
+            children[i] = new GameTreeNode(MovePool.get(moves[i]), root, copy);
+        }
+        long completed = HeuristicsQueue.GetCompleted();
+        for (GameTreeNode child : children) {
+            HeuristicsQueue.Submit(child, false);
+        }
+        WaitUntilIdle();
+        assertEquals(completed + count, HeuristicsQueue.GetCompleted());
+        for (GameTreeNode child : children) {
+            assertTrue(child.heuristic.has(Heuristic.is_ready));
+        }
+        System.out.println(HeuristicsQueue.Stats());
+
+        // once the game moves on, jobs for the old position are dropped instead of evaluated
+        GameState later = new GameState(children[0].state_after_move.get());
+        later.MakeMove(MovePool.get(moves[0]), true, false);
+        later.SetMoveNumber(board.GetMoveNumber() + 2);
+        AICore.SetState(later);
+        GameState stale = new GameState(board);
+        int other = MoveCompiler.GetMoves(stale, stale.GetTurnPieces(), moves) - 1;
+        stale.MakeMove(MovePool.get(moves[other]), true, false);
+        GameTreeNode stale_node = new GameTreeNode(MovePool.get(moves[other]), root, stale);
+        long cancelled = HeuristicsQueue.GetCancelled();
+        HeuristicsQueue.Submit(stale_node, false);
+        WaitUntilIdle();
+        assertEquals(cancelled + 1, HeuristicsQueue.GetCancelled());
+        assertFalse(stale_node.heuristic.has(Heuristic.is_ready));
+        HeuristicsQueue.Stop();
+    }
+
+    private static void WaitUntilIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (HeuristicsQueue.isProcessing() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(HeuristicsQueue.isProcessing());
+    }
+}
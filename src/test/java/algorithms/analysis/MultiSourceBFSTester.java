@@ -0,0 +1,85 @@
+package algorithms.analysis;
+
+import algorithms.search.RayTable;
+import data.structures.GameState;
+import org.junit.jupiter.api.Test;
+import tools.RandomPositions;
+import tools.Tuner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiSourceBFSTester {
+    @Test
+    void matches_relaxation() {
+        Random rng = new Random(99);
+        int[] queens = new int[8];
+        int[] distances = new int[Tuner.state_size];
+        for (int game = 0; game < 10; ++game) {
+            GameState board = new GameState();
+            while (board.CanGameContinue()) {
+                board.GetQueenTiles(queens);
+                for (MultiSourceBFS.metric m : MultiSourceBFS.metric.values()) {
+                    for (int offset = 0; offset < 8; offset += 4) {
+                        int reached = MultiSourceBFS.Run(board, queens, offset, 4, m, distances);
+                        int[] expected = Relax(board, queens, offset, m);
+                        assertArrayEquals(expected, distances);
+                        assertEquals(Arrays.stream(expected).filter(d -> d > 0).count(), reached);
+                    }
+                }
+                RandomPositions.PlayMove(rng, board);
+            }
+        }
+    }
+
+    @Test
+    void king_neighbours_stay_on_the_board() {
+        // tiles on the edge of a row must not see the other end of the next row
+        for (int tile = 0; tile < Tuner.state_size; ++tile) {
+            int x = tile % 10;
+            int y = tile / 10;
+            for (int n : MultiSourceBFS.GetKingNeighbours(tile)) {
+                assertTrue(Math.abs(n % 10 - x) <= 1 && Math.abs(n / 10 - y) <= 1);
+            }
+        }
+    }
+
+    // relaxes every tile until nothing changes, slow but obviously correct
+    private static int[] Relax(GameState board, int[] sources, int offset, MultiSourceBFS.metric m) {
+        long lo = board.GetOccupied(0);
+        long hi = board.GetOccupied(1);
+        int[] d = new int[Tuner.state_size];
+        Arrays.fill(d, MultiSourceBFS.unreached);
+        for (int i = offset; i < offset + 4; ++i) {
+            if (sources[i] >= 0) {
+                d[sources[i]] = 0;
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int u = 0; u < Tuner.state_size; ++u) {
+                if (d[u] == MultiSourceBFS.unreached) {
+                    continue;
+                }
+                for (int dir = 0; dir < RayTable.directions; ++dir) {
+                    for (int t : RayTable.GetRay(u, dir)) {
+                        if (RayTable.IsOccupied(lo, hi, t)) {
+                            break;
+                        }
+                        if (d[t] == MultiSourceBFS.unreached || d[t] > d[u] + 1) {
+                            d[t] = d[u] + 1;
+                            changed = true;
+                        }
+                        if (m == MultiSourceBFS.metric.KING) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,81 @@
+package algorithms.analysis;
+
+import data.structures.GameState;
+import org.junit.jupiter.api.Test;
+import tools.Benchmarker;
+import tools.RandomGen;
+import tools.RandomPositions;
+import tools.Tuner;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedScoringTester {
+    @Test
+    void packed_matches_scalar() {
+        Random rng = new Random(15);
+        for (int game = 0; game < 20; ++game) {
+            GameState board = new GameState();
+            while (board.CanGameContinue()) {
+                for (Amazongs.distance_mode mode : Amazongs.distance_mode.values()) {
+                    double scalar = Amazongs.CalculateHeuristic(board, mode, PackedScoring.mode.SCALAR);
+                    double packed = Amazongs.CalculateHeuristic(board, mode, PackedScoring.mode.PACKED);
+                    assertEquals(scalar, packed, 1e-9 * Math.max(1, Math.abs(scalar)));
+                }
+                assertEquals(Territory.CalculateHeuristic(board, PackedScoring.mode.SCALAR),
+                        Territory.CalculateHeuristic(board, PackedScoring.mode.PACKED));
+                RandomPositions.PlayMove(rng, board);
+            }
+        }
+    }
+
+    @Test
+    void walled_off_queens_score_the_same() {
+        // dense random boards, so many queens are trapped and many tiles are unreachable in every lane
+        RandomGen rng = new RandomGen(1515);
+        for (int i = 0; i < 2000; ++i) {
+            GameState board = rng.GetRandomBoard(0.5);
+            double scalar = Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.FULL, PackedScoring.mode.SCALAR);
+            double packed = Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.FULL, PackedScoring.mode.PACKED);
+            assertEquals(scalar, packed, 1e-9 * Math.max(1, Math.abs(scalar)));
+            assertEquals(Territory.CalculateHeuristic(board, PackedScoring.mode.SCALAR),
+                    Territory.CalculateHeuristic(board, PackedScoring.mode.PACKED));
+        }
+    }
+
+    @Test
+    void default_mode_follows_tuner() {
+        GameState board = RandomPositions.Play(new Random(151), 30);
+        PackedScoring.mode selected = Tuner.use_packed_scoring ? PackedScoring.mode.PACKED : PackedScoring.mode.SCALAR;
+        assertEquals(Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.FULL, selected),
+                Amazongs.CalculateHeuristic(board, Amazongs.distance_mode.FULL));
+        assertEquals(Territory.CalculateHeuristic(board, selected), Territory.CalculateHeuristic(board));
+    }
+
+    @Test
+    void scoring_time() {
+        GameState[] children = RandomPositions.Children(RandomPositions.Play(new Random(4488), 20));
+        int count = children.length;
+        for (int round = 0; round < 3; ++round) { // the first rounds warm the JIT up
+            for (Amazongs.distance_mode distances : Amazongs.distance_mode.values()) {
+                for (PackedScoring.mode scoring : PackedScoring.mode.values()) {
+                    Benchmarker B = new Benchmarker();
+                    B.Start();
+                    for (GameState child : children) {
+                        Amazongs.CalculateHeuristic(child, distances, scoring);
+                    }
+                    System.out.printf("Amazongs %s/%s: %d children in %d ms\n", distances, scoring, count, B.Elapsed());
+                }
+            }
+            for (PackedScoring.mode scoring : PackedScoring.mode.values()) {
+                Benchmarker B = new Benchmarker();
+                B.Start();
+                for (GameState child : children) {
+                    Territory.CalculateHeuristic(child, scoring);
+                }
+                System.out.printf("Territory %s: %d children in %d ms\n", scoring, count, B.Elapsed());
+            }
+        }
+    }
+}
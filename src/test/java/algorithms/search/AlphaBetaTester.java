@@ -0,0 +1,50 @@
+package algorithms.search;
+
+import data.structures.GameState;
+import data.structures.MovePool;
+import org.junit.jupiter.api.Test;
+import tools.Benchmarker;
+import tools.RandomPositions;
+import ubc.cosc322.AICore;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AlphaBetaTester {
+    @Test
+    void solves_endgames() {
+        Random rng = new Random(322);
+        for (int game = 0; game < 20; ++game) {
+            GameState board = RandomPositions.Play(rng, 70);
+            if (!board.CanGameContinue()) {
+                continue;
+            }
+            AlphaBeta searcher = new AlphaBeta();
+            assertTrue(searcher.Search(board));
+            assertTrue(searcher.IsSolved(board));
+            GameState after = new GameState(board);
+            assertTrue(after.MakeMove(MovePool.get(searcher.GetBestMove(board)), true, false));
+            if (RandomPositions.Wins(board)) {
+                assertFalse(RandomPositions.Wins(after));
+            }
+        }
+    }
+
+    @Test
+    void interrupted_search_keeps_last_iteration() throws InterruptedException {
+        GameState board = new GameState();
+        AICore.SetState(board);
+        AlphaBeta searcher = new AlphaBeta();
+        Benchmarker B = new Benchmarker();
+        Thread thread = new Thread(() -> assertFalse(searcher.Search(board)));
+        B.Start();
+        thread.start();
+        Thread.sleep(3000);
+        thread.interrupt();
+        thread.join();
+        System.out.printf("reached depth %d, stopped %d ms after the interrupt\n", searcher.GetCompletedDepth(board), B.Elapsed() - 3000);
+        assertTrue(searcher.GetCompletedDepth(board) > 0);
+        assertTrue(MovePool.get(searcher.GetBestMove(board)).IsValidFor(board));
+    }
+}
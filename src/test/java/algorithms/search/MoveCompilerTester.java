@@ -2,23 +2,23 @@ package algorithms.search;
 
 import org.junit.jupiter.api.Test;
 import data.BoardPiece;
+import data.Move;
 import data.structures.GameState;
-import data.structures.MovePool;
 import data.Position;
 import tools.Benchmarker;
 import tools.RandomGen;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 class MoveCompilerTester {
     @Test
     void BenchmarkGetMoveList() {
         //This isn't a full picture, as it does not involve building the GameTree
         final int trials = 64000;
         final boolean print_intermediaries = false;
-        Benchmarker B = new Benchmarker();
-        B.Start();
-        MovePool.generate_pool();
-        B.Stop();
-        System.out.printf("Pool generation took: %d ms", B.Elapsed());
         BenchmarkGetPooledMoveList(trials,print_intermediaries);
         BenchmarkGetNonPooledMoveList(trials,print_intermediaries);
         double x = -1.0;
@@ -33,6 +33,73 @@ class MoveCompilerTester {
         BenchmarkGetNonPooledMoveList(trials,print_intermediaries);
     }
 
+    @Test
+    void ray_table_reach() {
+        // on an empty board every queen sees 27 tiles from the rim and 35 from the centre
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        int[] buffer = new int[RayTable.max_reach];
+        for (int tile : MoveCompiler.GetAllValidPositions()) {
+            int count = RayTable.Count(0, 0, tile);
+            assertEquals(count, RayTable.Scan(0, 0, tile, buffer, 0));
+            min = Math.min(min, count);
+            max = Math.max(max, count);
+        }
+        assertEquals(27, min);
+        assertEquals(35, max);
+        // a blocker directly next to the queen closes that whole direction
+        GameState board = new GameState(new int[100]);
+        board.SetTile(1, 3);
+        assertEquals(RayTable.Count(0, 0, 0) - 9, RayTable.Count(board.GetOccupied(0), board.GetOccupied(1), 0));
+    }
+
+    @Test
+    void moves_match_a_naive_scan() {
+        RandomGen rng = new RandomGen(22);
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        for (int trial = 0; trial < 2000; ++trial) {
+            GameState board = rng.GetRandomBoard(rng.nextDouble() * 0.6);
+            for (int player = 1; player <= 2; ++player) {
+                BoardPiece[] pieces = board.GetPlayerPieces(player);
+                Set<Integer> expected = new HashSet<>();
+                for (BoardPiece piece : pieces) {
+                    NaiveMoves(board, piece.CalculateIndex(), expected);
+                }
+                int count = MoveCompiler.GetMoves(board, pieces, buffer);
+                Set<Integer> actual = new HashSet<>();
+                for (int i = 0; i < count; ++i) {
+                    assertTrue(actual.add(buffer[i]), "a move was generated twice");
+                }
+                assertEquals(expected, actual);
+                assertEquals(count, MoveCompiler.CountMoves(board, pieces));
+            }
+        }
+    }
+
+    // walks each direction a tile at a time on (x, y) coordinates, the queen's start tile is empty for the arrow
+    private static void NaiveMoves(GameState board, int start, Set<Integer> moves) {
+        int[] dx = {-1, 1, 0, 0, 1, -1, 1, -1};
+        int[] dy = {0, 0, 1, -1, 1, -1, -1, 1};
+        for (int d = 0; d < 8; ++d) {
+            for (int x = start % 10 + dx[d], y = start / 10 + dy[d]; IsOpen(board, x, y, -1); x += dx[d], y += dy[d]) {
+                int next = y * 10 + x;
+                for (int a = 0; a < 8; ++a) {
+                    for (int ax = x + dx[a], ay = y + dy[a]; IsOpen(board, ax, ay, start); ax += dx[a], ay += dy[a]) {
+                        moves.add(Move.Pack(start, next, ay * 10 + ax));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean IsOpen(GameState board, int x, int y, int vacated) {
+        if (x < 0 || x > 9 || y < 0 || y > 9) {
+            return false;
+        }
+        int tile = y * 10 + x;
+        return tile == vacated || board.ReadTile(tile) == 0;
+    }
+
     void BenchmarkGetPooledMoveList(int trials, boolean print_runs){
         long total = 0;
         RandomGen rng = new RandomGen();
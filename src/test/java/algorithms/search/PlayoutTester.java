@@ -0,0 +1,41 @@
+package algorithms.search;
+
+import data.structures.GameState;
+import org.junit.jupiter.api.Test;
+import tools.Benchmarker;
+import tools.RandomGen;
+import ubc.cosc322.AICore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayoutTester {
+    @Test
+    void playouts_leave_board_untouched() {
+        RandomGen rng = new RandomGen(9);
+        GameState board = new GameState();
+        AICore.SetState(board);
+        GameState copy = new GameState(board);
+        for (int i = 0; i < 1000; ++i) {
+            double result = Playout.Run(rng, board);
+            assertTrue(result == 0 || result == 1);
+        }
+        assertEquals(copy, board);
+        assertEquals(copy.GetZobristKey(), board.GetZobristKey());
+    }
+
+    @Test
+    void playouts_per_second() {
+        RandomGen rng = new RandomGen(9);
+        GameState board = new GameState();
+        AICore.SetState(board);
+        Benchmarker B = new Benchmarker();
+        int playouts = 0;
+        double wins = 0;
+        B.Start();
+        while (B.Elapsed() < 1000) {
+            wins += Playout.Run(rng, board);
+            ++playouts;
+        }
+        System.out.printf("%d playouts in %d ms, player 2 won %.1f%%\n", playouts, B.Elapsed(), 100 * wins / playouts);
+    }
+}
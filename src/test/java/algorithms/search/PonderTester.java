@@ -0,0 +1,57 @@
+package algorithms.search;
+
+import data.Move;
+import data.structures.GameState;
+import data.structures.GameTreeNode;
+import data.structures.MovePool;
+import org.junit.jupiter.api.Test;
+import tools.RandomGen;
+import tools.Tuner;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PonderTester {
+    @Test
+    void effort_follows_the_most_visited_replies() {
+        GameState board = new GameState();
+        GameTreeNode root = new GameTreeNode(null, null, board);
+        int[] moves = MoveCompiler.NewMoveBuffer();
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), moves);
+        GameTreeNode[] replies = new GameTreeNode[count];
+        for (int i = 0; i < count; ++i) {
+            Move move = MovePool.get(moves[i]);
+            GameState copy = new GameState(board);
+            copy.MakeMove(move, true, false);
+            replies[i] = new GameTreeNode(move, root, copy);
+            // the first few replies get 10, 20, ... visits, a handful of the rest get one
+            int visits = i < 6 ? (i + 1) * 10 : (i % 50 == 0 ? 1 : 0);
+            for (int v = 0; v < visits; ++v) {
+                replies[i].add_result(0.5);
+            }
+        }
+
+        GameTreeNode[] top = new GameTreeNode[Tuner.ponder_replies];
+        assertEquals(top.length, Ponder.MostVisited(root, top));
+        long total = 0;
+        for (int i = 0; i < top.length; ++i) {
+            assertSame(replies[5 - i], top[i]);
+            total += top[i].visits();
+        }
+
+        RandomGen rng = new RandomGen(25);
+        Map<GameTreeNode, Integer> picked = new IdentityHashMap<>();
+        int rounds = 40000;
+        for (int i = 0; i < rounds; ++i) {
+            picked.merge(Ponder.PickRoot(rng, root), 1, Integer::sum);
+        }
+        assertEquals(Tuner.ponder_root_share, picked.getOrDefault(root, 0) / (double) rounds, 0.02);
+        for (GameTreeNode reply : top) {
+            double expected = (1 - Tuner.ponder_root_share) * reply.visits() / total;
+            assertEquals(expected, picked.getOrDefault(reply, 0) / (double) rounds, 0.02);
+        }
+        assertEquals(top.length + 1, picked.size());
+    }
+}
@@ -0,0 +1,82 @@
+package algorithms.search;
+
+import data.structures.GameState;
+import org.junit.jupiter.api.Test;
+import tools.Benchmarker;
+import tools.RandomPositions;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegionSolverTester {
+    @Test
+    void separated_regions_match_full_search() {
+        Random rng = new Random(322);
+        int[] moves = new int[2];
+        int solved = 0;
+        for (int game = 0; game < 200; ++game) {
+            GameState board = RandomPositions.Play(rng, 66 + rng.nextInt(10));
+            if (!board.CanGameContinue() || !RegionSolver.Solve(board, moves)) {
+                continue;
+            }
+            ++solved;
+            boolean to_move_wins = moves[board.GetPlayerTurn() - 1] > moves[board.GetNextPlayerTurn() - 1];
+            assertEquals(RandomPositions.Wins(board), to_move_wins);
+        }
+        System.out.printf("%d positions solved\n", solved);
+        assertTrue(solved > 0);
+    }
+
+    @Test
+    void running_out_of_budget_only_blocks_smaller_budgets() {
+        Random rng = new Random(1212);
+        int[] moves = new int[2];
+        int[] solved = new int[2];
+        int checked = 0;
+        for (int game = 0; game < 300 && checked < 5; ++game) {
+            GameState board = RandomPositions.Play(rng, 55 + rng.nextInt(20));
+            if (!board.CanGameContinue() || RegionSolver.Solve(board, moves, 1)) {
+                continue;
+            }
+            // failed once with a tiny budget, so it fails again straight away, but not with the full one
+            assertFalse(RegionSolver.Solve(board, moves, 1));
+            if (!RegionSolver.Solve(board, solved)) {
+                continue;
+            }
+            ++checked;
+            // the full solve cached the regions, which the tiny budget now finds
+            assertTrue(RegionSolver.Solve(board, moves, 1));
+            assertArrayEquals(solved, moves);
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    void players_that_can_meet_are_not_solved() {
+        int[] moves = new int[2];
+        assertFalse(RegionSolver.Solve(new GameState(), moves));
+        assertFalse(RegionSolver.Solve(RandomPositions.Play(new Random(7), 10), moves));
+    }
+
+    @Test
+    void solves_late_positions_quickly() {
+        Random rng = new Random(4488);
+        int[] moves = new int[2];
+        Benchmarker B = new Benchmarker();
+        int attempts = 0;
+        int solved = 0;
+        B.Start();
+        for (int game = 0; game < 500; ++game) {
+            GameState board = RandomPositions.Play(rng, 40 + rng.nextInt(30));
+            if (board.CanGameContinue()) {
+                ++attempts;
+                if (RegionSolver.Solve(board, moves)) {
+                    ++solved;
+                }
+            }
+        }
+        System.out.printf("solved %d of %d positions in %d ms\n", solved, attempts, B.Elapsed());
+        assertTrue(solved > 0);
+    }
+}
@@ -0,0 +1,52 @@
+package data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeuristicTester {
+    @Test
+    void flags_are_independent() {
+        Heuristic h = new Heuristic();
+        assertFalse(h.has(Heuristic.has_amazongs));
+        assertTrue(h.claim(Heuristic.has_amazongs));
+        assertFalse(h.claim(Heuristic.has_amazongs));
+        h.set(Heuristic.is_ready);
+        assertTrue(h.has(Heuristic.has_amazongs) && h.has(Heuristic.is_ready));
+        assertFalse(h.has(Heuristic.has_territory));
+    }
+
+    @Test
+    void concurrent_updates() throws InterruptedException {
+        Heuristic h = new Heuristic();
+        AtomicInteger claims = new AtomicInteger();
+        int threads = 4;
+        int updates = 100_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < updates; ++i) {
+                    h.add_aggregate(1);
+                    h.increment_aggregate_count();
+                    h.raise_maximum_sub(id * updates + i);
+                    h.lower_minimum_sub(-(id * updates + i));
+                    if (h.claim(1 << (7 + i % 8))) {
+                        claims.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals((double) threads * updates, h.aggregate);
+        assertEquals(threads * updates, h.aggregate_count);
+        assertEquals((double) threads * updates - 1, h.maximum_sub);
+        assertEquals(-((double) threads * updates - 1), h.minimum_sub);
+        assertEquals(8, claims.get()); // each flag is claimed exactly once
+    }
+}
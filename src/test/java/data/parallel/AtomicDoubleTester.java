@@ -0,0 +1,69 @@
+package data.parallel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicDoubleTester {
+    private static final int threads = 4;
+    private static final int adds = 200_000;
+
+    @Test
+    void operations() {
+        AtomicDouble d = new AtomicDouble(1.5);
+        assertTrue(d.compareAndSet(1.5, 2.0));
+        assertFalse(d.compareAndSet(1.5, 3.0));
+        assertEquals(2.5, d.addAndGet(0.5));
+        assertEquals(2.5, d.getAndUpdate(x -> x * 2));
+        assertEquals(5.0, d.get());
+        assertEquals(7.0, d.accumulateAndGet(7.0, Math::max));
+        assertEquals(7.0, d.getAndAdd(1.0));
+        assertEquals(8.0, d.get());
+    }
+
+    @Test
+    void no_lost_updates() throws InterruptedException {
+        AtomicDouble atomic = new AtomicDouble();
+        StripedDouble striped = new StripedDouble();
+        Run(() -> {
+            for (int i = 0; i < adds; ++i) {
+                atomic.add(1);
+                striped.add(1);
+            }
+        });
+        assertEquals((double) threads * adds, atomic.get());
+        assertEquals((double) threads * adds, striped.get());
+    }
+
+    @Test
+    void contended_throughput() throws InterruptedException {
+        AtomicDouble atomic = new AtomicDouble();
+        StripedDouble striped = new StripedDouble();
+        long start = System.nanoTime();
+        Run(() -> {
+            for (int i = 0; i < adds; ++i) {
+                atomic.add(0.5);
+            }
+        });
+        long middle = System.nanoTime();
+        Run(() -> {
+            for (int i = 0; i < adds; ++i) {
+                striped.add(0.5);
+            }
+        });
+        long end = System.nanoTime();
+        System.out.printf("AtomicDouble: %d ms\nStripedDouble: %d ms\n", (middle - start) / 1_000_000, (end - middle) / 1_000_000);
+        assertEquals(atomic.get(), striped.get());
+    }
+
+    private static void Run(Runnable work) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(work);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
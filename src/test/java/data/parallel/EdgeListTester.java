@@ -0,0 +1,98 @@
+package data.parallel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EdgeListTester {
+    @Test
+    void keys_and_removal() {
+        EdgeList<String> list = new EdgeList<>();
+        assertTrue(list.add(7, "a"));
+        assertTrue(list.add(9, "b"));
+        assertFalse(list.add(7, "c"));
+        list.add("d"); // no key, duplicates are checked by identity
+        assertEquals(3, list.size());
+        assertEquals("b", list.find(9));
+        assertNull(list.find(8));
+        assertEquals(9, list.keyOf("b"));
+        assertEquals(EdgeList.no_key, list.keyOf("d"));
+        assertTrue(list.remove("a"));
+        assertFalse(list.remove("a"));
+        assertNull(list.find(7));
+        assertEquals("b", list.find(9));
+        assertEquals("d", list.get(1));
+        assertNull(list.try_get(2));
+        list.clear();
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void batches_skip_what_add_would_refuse() {
+        EdgeList<String> list = new EdgeList<>();
+        list.add(1, "a");
+        String d = "d";
+        list.add(d);
+        boolean[] added = list.addAll(List.of("b", "c", "e", d, "f"), new int[]{1, 2, 2, EdgeList.no_key, 3});
+        assertArrayEquals(new boolean[]{false, true, false, false, true}, added);
+        assertEquals(4, list.size());
+        assertEquals("a", list.find(1));
+        assertEquals("c", list.find(2));
+        assertEquals("f", list.find(3));
+        assertFalse(list.addAll(List.of("g"), new int[]{3})[0]);
+        assertEquals(4, list.size());
+    }
+
+    @Test
+    void large_batches_are_indexed() {
+        EdgeList<Integer> list = new EdgeList<>();
+        int count = 3000; // about as many children as an opening position has
+        List<Integer> batch = new ArrayList<>();
+        int[] keys = new int[count];
+        for (int i = 0; i < count; ++i) {
+            batch.add(i);
+            keys[i] = i * 7;
+        }
+        boolean[] added = list.addAll(batch, keys);
+        for (int i = 0; i < count; ++i) {
+            assertTrue(added[i]);
+            assertEquals(i, (int) list.find(i * 7));
+        }
+        assertTrue(list.remove(5));
+        assertNull(list.find(35));
+        assertEquals(6, (int) list.find(42));
+        assertEquals(count - 1, list.size());
+    }
+
+    @Test
+    void concurrent_adds_keep_one_entry_per_key() throws InterruptedException {
+        EdgeList<Integer> list = new EdgeList<>();
+        AtomicInteger added = new AtomicInteger();
+        int keys = 2000;
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; ++t) {
+            final int offset = t * 500;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < keys; ++i) {
+                    int key = (i + offset) % keys;
+                    if (list.add(key, key)) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(keys, list.size());
+        assertEquals(keys, added.get());
+        for (int key = 0; key < keys; ++key) {
+            assertEquals(key, (int) list.find(key));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package data.structures;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackpropagationTester {
+    // root -> a, b -> c, so c reaches the root along two paths
+    private static GameTreeNode[] Diamond() {
+        GameState board = new GameState();
+        GameTreeNode root = new GameTreeNode(null, null, board);
+        GameTreeNode a = new GameTreeNode(null, root, board);
+        GameTreeNode b = new GameTreeNode(null, root, board);
+        GameTreeNode c = new GameTreeNode(null, a, board);
+        b.adopt(c);
+        return new GameTreeNode[]{root, a, b, c};
+    }
+
+    @Test
+    void every_path_counts_once() {
+        GameTreeNode[] n = Diamond();
+        Backpropagation.Apply(n[3], 1.0, 1);
+        assertEquals(1.0, n[3].heuristic.aggregate);
+        assertEquals(1, n[1].heuristic.aggregate_count);
+        assertEquals(1, n[2].heuristic.aggregate_count);
+        assertEquals(2.0, n[0].heuristic.aggregate);
+        assertEquals(2, n[0].heuristic.aggregate_count);
+        assertEquals(1.0, n[0].heuristic.aggregate_avg);
+    }
+
+    @Test
+    void batch_matches_single_updates() {
+        GameTreeNode[] single = Diamond();
+        GameTreeNode[] batched = Diamond();
+        double[] deltas = {0.25, 1.0, 0.5};
+        int[] targets = {3, 1, 3};
+        Backpropagation batch = new Backpropagation();
+        for (int i = 0; i < deltas.length; ++i) {
+            Backpropagation.Apply(single[targets[i]], deltas[i], 1);
+            batch.add(batched[targets[i]], deltas[i], 1);
+        }
+        batch.flush();
+        for (int i = 0; i < single.length; ++i) {
+            assertEquals(single[i].heuristic.aggregate, batched[i].heuristic.aggregate, 1e-12);
+            assertEquals(single[i].heuristic.aggregate_count, batched[i].heuristic.aggregate_count);
+        }
+    }
+
+    @Test
+    void aggregate_never_goes_negative() {
+        GameTreeNode[] n = Diamond();
+        Backpropagation.Apply(n[3], 1.0, 1);
+        Backpropagation.Apply(n[1], -5.0, 1);
+        assertEquals(0.0, n[1].heuristic.aggregate);
+        assertEquals(1.0, n[0].heuristic.aggregate); // only the change a actually took reaches the root
+    }
+}
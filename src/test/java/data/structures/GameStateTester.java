@@ -0,0 +1,92 @@
+package data.structures;
+
+import algorithms.search.MoveCompiler;
+import data.Position;
+import org.junit.jupiter.api.Test;
+import tools.Benchmarker;
+import tools.Debug;
+import tools.RandomGen;
+import tools.Tuner;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameStateTester {
+    @Test
+    void bitboard_matches_source_state() {
+        RandomGen rng = new RandomGen(7);
+        for (int trial = 0; trial < 1000; ++trial) {
+            ArrayList<Integer> state = rng.GetRandomState();
+            GameState board = new GameState(state, true, true);
+            for (int y = Tuner.coord_min; y <= Tuner.coord_max; ++y) {
+                for (int x = Tuner.coord_min; x <= Tuner.coord_max; ++x) {
+                    // the incoming state is upside down compared to our board
+                    int expected = state.get(((Tuner.coord_max - y) * Tuner.coord_upper) + x);
+                    assertEquals(expected, board.ReadTile(x, y));
+                    assertEquals(expected == 0, board.IsEmpty(Position.CalculateIndex(x, y)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void copies_are_equal_until_moved() {
+        GameState board = new GameState(Debug.test_state_black_advantage);
+        GameState copy = new GameState(board);
+        assertEquals(board, copy);
+        assertEquals(board.hashCode(), copy.hashCode());
+        int start = board.GetTurnPieces()[0].CalculateIndex();
+        copy.SetTile(start, 0);
+        assertNotEquals(board, copy);
+        assertEquals(1, board.ReadTile(start));
+        copy.SetTile(start, 1);
+        assertEquals(board, copy);
+        assertEquals(board.hashCode(), copy.hashCode());
+    }
+
+    @Test
+    void incremental_hash_matches_rebuilt_hash() {
+        RandomGen rng = new RandomGen(5);
+        int[] moves = MoveCompiler.NewMoveBuffer();
+        for (int game = 0; game < 50; ++game) {
+            GameState board = new GameState();
+            while (board.CanGameContinue()) {
+                int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), moves);
+                if (count == 0) {
+                    break;
+                }
+                assertTrue(board.MakeMove(MovePool.get(moves[rng.nextInt(count)]), true, false));
+                GameState rebuilt = new GameState(new int[Tuner.state_size]);
+                for (int index = 0; index < Tuner.state_size; ++index) {
+                    rebuilt.SetTile(index, board.ReadTile(index));
+                }
+                rebuilt.SetMoveNumber(board.GetMoveNumber());
+                assertEquals(rebuilt.GetZobristKey(), board.GetZobristKey());
+            }
+        }
+    }
+
+    @Test
+    void reading_off_the_board_throws() {
+        GameState board = new GameState();
+        assertThrows(IndexOutOfBoundsException.class, () -> board.ReadTile(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.ReadTile(Tuner.state_size));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.ReadTile(Tuner.state_size + 64));
+        assertEquals(0, board.ReadTile(Tuner.state_size - 1));
+    }
+
+    @Test
+    void BenchmarkCopy() {
+        final int trials = 1000000;
+        Benchmarker B = new Benchmarker();
+        GameState board = new GameState(Debug.late_state);
+        B.Start();
+        int hash = 0;
+        for (int i = 0; i < trials; ++i) {
+            hash ^= new GameState(board).hashCode();
+        }
+        B.Stop();
+        System.out.printf("copy + hash: %d ns per state [%d]\n", B.ElapsedNano() / trials, hash);
+    }
+}
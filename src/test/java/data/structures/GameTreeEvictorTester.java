@@ -0,0 +1,70 @@
+package data.structures;
+
+import algorithms.search.MoveCompiler;
+import data.Move;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameTreeEvictorTester {
+    @Test
+    void least_visited_leaves_go_first_and_their_moves_come_back() {
+        GameTreeNode root = new GameTreeNode(null, null, new GameState());
+        GameTreeNode a = Expand(root);
+        GameTreeNode b = Expand(root);
+        GameTreeNode c = Expand(root); // a leaf under the root, which always stays
+        GameTreeNode visited = Expand(a);
+        GameTreeNode unvisited = Expand(a);
+        GameTreeNode aggregated = Expand(a); // only BreadthFirst has been here
+        GameTreeNode once = Expand(b);
+        for (int i = 0; i < 5; ++i) {
+            visited.add_result(1);
+        }
+        once.add_result(0);
+        aggregated.heuristic.add_aggregate_count(3);
+
+        ArrayList<GameTreeNode> leaves = GameTreeEvictor.Leaves(List.of(root), Collections.newSetFromMap(new IdentityHashMap<>()));
+        assertEquals(List.of(unvisited, once, aggregated, visited), leaves);
+        assertFalse(leaves.contains(c));
+
+        int packed = unvisited.move.get().Packed();
+        assertEquals(3, a.expanded());
+        GameTreeEvictor.Evict(leaves, 1);
+        assertNull(a.find_child(packed));
+        assertNull(GameTree.get(unvisited.state_after_move.get()));
+        assertNull(unvisited.try_get_parent(0));
+        assertSame(visited, a.find_child(visited.move.get().Packed()));
+        // the parent had already handed the move out, so it's queued again ahead of the untried ones
+        assertEquals(2, a.expanded());
+        assertTrue(a.has_untried_moves());
+        assertEquals(packed, a.next_untried_move());
+        assertEquals(3, a.expanded());
+
+        for (GameTreeNode node : List.of(a, b, c, visited, aggregated, once)) {
+            GameTree.remove(node);
+        }
+    }
+
+    // expands the parent's next untried move the way MonteCarlo does
+    private static GameTreeNode Expand(GameTreeNode parent) {
+        GameState board = parent.state_after_move.get();
+        if (parent.needs_untried_moves()) {
+            int[] buffer = MoveCompiler.NewMoveBuffer();
+            int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+            int[] moves = new int[count];
+            System.arraycopy(buffer, 0, moves, 0, count);
+            parent.set_untried_moves(moves);
+        }
+        Move move = MovePool.get(parent.next_untried_move());
+        GameState copy = new GameState(board);
+        copy.MakeMove(move, true, false);
+        GameTreeNode child = new GameTreeNode(move, parent, copy);
+        GameTree.put(child);
+        return child;
+    }
+}
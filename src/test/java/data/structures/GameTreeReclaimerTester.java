@@ -0,0 +1,63 @@
+package data.structures;
+
+import algorithms.search.MoveCompiler;
+import data.Move;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameTreeReclaimerTester {
+    @Test
+    void promotion_keeps_the_subtree_and_frees_the_rest() {
+        int[] moves = MoveCompiler.NewMoveBuffer();
+        GameState board = new GameState();
+        GameTreeNode old_root = Put(new GameTreeNode(null, null, new GameState(board)));
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), moves);
+        GameTreeNode[] children = new GameTreeNode[count];
+        for (int i = 0; i < count; ++i) {
+            children[i] = Put(Child(old_root, moves[i]));
+        }
+        GameTreeNode promoted = children[0];
+        GameTreeNode sibling = children[1];
+        promoted.add_result(1);
+        // a grandchild only the sibling reaches, and one linked under both as a transposition would be
+        GameState after = sibling.state_after_move.get();
+        MoveCompiler.GetMoves(after, after.GetTurnPieces(), moves);
+        GameTreeNode own = Put(Child(sibling, moves[0]));
+        after = promoted.state_after_move.get();
+        MoveCompiler.GetMoves(after, after.GetTurnPieces(), moves);
+        int packed = moves[0] != own.move.get().Packed() ? moves[0] : moves[1];
+        GameTreeNode shared = Put(Child(promoted, packed));
+        sibling.adopt(shared, packed);
+
+        GameTreeReclaimer.Promote(old_root, promoted);
+        while (GameTreeReclaimer.Step(16) > 0) {}
+        assertTrue(GameTreeReclaimer.isIdle());
+
+        assertSame(promoted, GameTree.get(promoted.state_after_move.get()));
+        assertEquals(1, promoted.visits());
+        assertNull(promoted.try_get_parent(0));
+        assertSame(shared, GameTree.get(shared.state_after_move.get()));
+        assertSame(promoted, shared.try_get_parent(0));
+        assertNull(shared.try_get_parent(1));
+        assertNull(GameTree.get(old_root.state_after_move.get()));
+        assertNull(GameTree.get(sibling.state_after_move.get()));
+        assertNull(GameTree.get(own.state_after_move.get()));
+        GameTree.remove(promoted);
+        GameTree.remove(shared);
+    }
+
+    private static GameTreeNode Child(GameTreeNode parent, int packed) {
+        Move move = MovePool.get(packed);
+        GameState copy = new GameState(parent.state_after_move.get());
+        copy.MakeMove(move, true, false);
+        GameTreeNode child = new GameTreeNode(move, null, copy);
+        parent.adopt(child, packed);
+        return child;
+    }
+
+    private static GameTreeNode Put(GameTreeNode node) {
+        GameTree.put(node);
+        return node;
+    }
+}
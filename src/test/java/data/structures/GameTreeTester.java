@@ -0,0 +1,61 @@
+package data.structures;
+
+import algorithms.search.MoveCompiler;
+import data.Move;
+import org.junit.jupiter.api.Test;
+import tools.RandomGen;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameTreeTester {
+    @Test
+    void put_get_remove() {
+        RandomGen rng = new RandomGen(9);
+        int[] moves = MoveCompiler.NewMoveBuffer();
+        GameState board = new GameState();
+        long size = GameTree.size();
+        GameTreeNode parent = new GameTreeNode(new Move(), null, board);
+        GameTree.put(parent);
+        assertSame(parent, GameTree.get(new GameState(board)));
+
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), moves);
+        GameTreeNode[] children = new GameTreeNode[count];
+        for (int i = 0; i < count; ++i) {
+            GameState copy = new GameState(board);
+            Move move = MovePool.get(moves[i]);
+            assertTrue(copy.MakeMove(move, true, false));
+            children[i] = new GameTreeNode(move, parent, copy);
+            GameTree.put(children[i]);
+        }
+        for (int i = 0; i < 200; ++i) {
+            GameTreeNode child = children[rng.nextInt(count)];
+            GameState lookup = new GameState(child.state_after_move.get());
+            assertSame(child, GameTree.get(lookup));
+        }
+        // a duplicate put keeps the original node
+        GameTreeNode first = children[0];
+        GameTree.put(new GameTreeNode(first.move.get(), null, new GameState(first.state_after_move.get())));
+        assertSame(first, GameTree.get(first.state_after_move.get()));
+
+        // advancing only marks entries as replaceable, removing them is up to GameTreeReclaimer
+        GameTree.advance(first.state_after_move.get().GetMoveNumber());
+        assertSame(parent, GameTree.get(board));
+        GameTree.remove(parent);
+        assertNull(GameTree.get(board));
+        assertSame(first, GameTree.get(first.state_after_move.get()));
+        for (GameTreeNode child : children) {
+            GameTree.remove(child);
+        }
+        assertEquals(size, GameTree.size());
+    }
+
+    @Test
+    void reset_empties_the_table() {
+        GameState board = new GameState();
+        GameTree.put(new GameTreeNode(new Move(), null, board));
+        assertNotNull(GameTree.get(board));
+        GameTree.reset();
+        assertNull(GameTree.get(board));
+        assertEquals(0, GameTree.size());
+    }
+}
@@ -0,0 +1,35 @@
+package tools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MathsTest {
+    @Test
+    void pow2_is_exact() {
+        for (int e = -300; e <= 300; ++e) {
+            assertEquals(Math.pow(2, e), Maths.pow2(e));
+            assertEquals(Math.pow(2, e), Maths.pow2((double) e));
+        }
+        assertEquals(0.0, Maths.pow2(Double.NEGATIVE_INFINITY));
+        assertEquals(Math.pow(2, 0.5), Maths.pow2(0.5));
+    }
+
+    @Test
+    void f_tables_match_formulas() {
+        double worst = 0;
+        for (double w = 0; w <= 100; w += 0.001) {
+            worst = Math.max(worst, Math.abs(Maths.f1(w) - Maths.f1_exact(w)));
+            worst = Math.max(worst, Math.abs(Maths.f2(w) - Maths.f2_exact(w)));
+            worst = Math.max(worst, Math.abs(Maths.f3(w) - Maths.f3_exact(w)));
+            worst = Math.max(worst, Math.abs(Maths.f4(w) - Maths.f4_exact(w)));
+        }
+        System.out.printf("largest table error: %.3e\n", worst);
+        assertTrue(worst < 2e-7);
+        // the sample points themselves are exact
+        for (int w = 0; w <= 70; ++w) {
+            assertEquals(Maths.f1_exact(w), Maths.f1(w));
+            assertEquals(Maths.f4_exact(w), Maths.f4(w));
+        }
+    }
+}
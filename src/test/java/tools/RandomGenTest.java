@@ -2,9 +2,27 @@ package tools;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 class RandomGenTest {
     static RandomGen rng = new RandomGen();
 
+    @Test
+    void same_sequence_as_java_random() {
+        RandomGen ours = new RandomGen(322);
+        Random reference = new Random(322);
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals(reference.nextInt(100), ours.nextInt(100));
+            assertEquals(reference.nextDouble(), ours.nextDouble());
+            assertEquals(reference.nextLong(), ours.nextLong());
+        }
+        ours.setSeed(7);
+        reference.setSeed(7);
+        assertEquals(reference.nextGaussian(), ours.nextGaussian());
+    }
+
     @Test
     void DEPRECATED_GetDistinctSequenceShuffled() {
         rng.DEPRECATED_GetDistinctSequenceShuffled(0,1000,1001);
@@ -0,0 +1,56 @@
+package tools;
+
+import algorithms.search.MoveCompiler;
+import data.Move;
+import data.structures.GameState;
+import data.structures.MovePool;
+
+import java.util.Random;
+
+/**
+ * RandomPositions makes the positions the search and evaluation tests run on, by playing uniformly random moves from
+ * the opening, and holds the brute force answers those tests are checked against.
+ */
+public class RandomPositions {
+    // plays up to `moves` random moves from the opening, fewer if the game ends first
+    public static GameState Play(Random rng, int moves) {
+        GameState board = new GameState();
+        for (int i = 0; i < moves && board.CanGameContinue(); ++i) {
+            PlayMove(rng, board);
+        }
+        return board;
+    }
+
+    // plays one random move on `board`, returns false if the player to move has none
+    public static boolean PlayMove(Random rng, GameState board) {
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+        return count > 0 && board.MakeMove(MovePool.get(buffer[rng.nextInt(count)]), true, false);
+    }
+
+    // every position one move from `board`, in move generation order
+    public static GameState[] Children(GameState board) {
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+        GameState[] children = new GameState[count];
+        for (int i = 0; i < count; ++i) {
+            children[i] = new GameState(board);
+            children[i].MakeMove(MovePool.get(buffer[i]), true, false);
+        }
+        return children;
+    }
+
+    // plain negamax, true if the player to move can force a win (only usable once few moves are left)
+    public static boolean Wins(GameState board) {
+        int[] buffer = MoveCompiler.NewMoveBuffer();
+        int count = MoveCompiler.GetMoves(board, board.GetTurnPieces(), buffer);
+        for (int i = 0; i < count; ++i) {
+            GameState copy = new GameState(board);
+            copy.MakeMove(new Move(buffer[i]), true, false);
+            if (!Wins(copy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
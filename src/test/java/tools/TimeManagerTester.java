@@ -0,0 +1,73 @@
+package tools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeManagerTester {
+    private long now = 0;
+
+    @Test
+    void middle_game_gets_more_time() {
+        TimeManager opening = new TimeManager(Tuner.game_time_budget, () -> now);
+        TimeManager middle = new TimeManager(Tuner.game_time_budget, () -> now);
+        opening.StartMove(1);
+        middle.StartMove(30);
+        assertTrue(middle.GetTarget() > opening.GetTarget());
+        assertTrue(middle.GetLimit() <= Tuner.move_time_limit - Tuner.move_time_safety);
+    }
+
+    @Test
+    void clear_decisions_stop_early() {
+        TimeManager clock = new TimeManager(Tuner.game_time_budget, () -> now);
+        clock.StartMove(30);
+        long target = clock.GetTarget();
+        long visits = 0;
+        while (!clock.ShouldStop(7, visits * 9 / 10, visits / 20, visits, false)) {
+            now += Tuner.time_poll_interval;
+            visits += 1000;
+        }
+        assertTrue(clock.Elapsed() < target);
+    }
+
+    @Test
+    void close_decisions_get_extended() {
+        TimeManager clock = new TimeManager(1000 * 60 * 5, () -> now); // small enough that the target is under the server's clock
+        clock.StartMove(30);
+        long target = clock.GetTarget();
+        assertTrue(clock.GetLimit() > target);
+        long visits = 0;
+        int best = 0;
+        // the lead keeps changing hands
+        while (!clock.ShouldStop(best, visits / 2 + 1, visits / 2, visits + 1, false)) {
+            now += Tuner.time_poll_interval;
+            visits += 1000;
+            if (now % 1000 == 0) {
+                best = 1 - best;
+            }
+        }
+        assertTrue(clock.Elapsed() > target);
+        assertTrue(clock.Elapsed() <= clock.GetLimit() + Tuner.time_poll_interval);
+    }
+
+    @Test
+    void solved_stops_immediately() {
+        TimeManager clock = new TimeManager(Tuner.game_time_budget, () -> now);
+        clock.StartMove(50);
+        assertTrue(clock.ShouldStop(-1, 0, 0, 0, true));
+    }
+
+    @Test
+    void never_overruns_the_budget() {
+        TimeManager clock = new TimeManager(Tuner.game_time_budget, () -> now);
+        for (int move = 1; move <= 92; move += 2) {
+            clock.StartMove(move);
+            while (!clock.ShouldStop(move, 10, 10, 20, false)) { // never settles, so every move runs to its limit
+                now += Tuner.time_poll_interval;
+            }
+            assertTrue(clock.Elapsed() <= Tuner.move_time_limit - Tuner.move_time_safety);
+            clock.EndMove();
+        }
+        assertTrue(clock.GetBudget() >= 0);
+    }
+}